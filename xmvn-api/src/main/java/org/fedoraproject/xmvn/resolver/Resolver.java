@@ -15,6 +15,10 @@
  */
 package org.fedoraproject.xmvn.resolver;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Resolves artifacts from system repositories configured in {@code <resolverSettings>} in XMvn configuration.
  * 
@@ -29,4 +33,26 @@ public interface Resolver
      * @return results of artifact resolution, never {@code null}
      */
     ResolutionResult resolve( ResolutionRequest request );
+
+    /**
+     * Resolve multiple artifacts from system repositories configured in {@code <resolverSettings>} in XMvn
+     * configuration.
+     * <p>
+     * The default implementation resolves artifacts one by one. Implementations can override this method to resolve
+     * artifacts more efficiently than with separate calls to {@link #resolve(ResolutionRequest)}.
+     * 
+     * @param requests parameters of artifact resolutions
+     * @return results of artifact resolutions, in the same order as requests were iterated, never {@code null}
+     */
+    default List<ResolutionResult> resolveAll( Collection<ResolutionRequest> requests )
+    {
+        List<ResolutionResult> results = new ArrayList<>( requests.size() );
+
+        for ( ResolutionRequest request : requests )
+        {
+            results.add( resolve( request ) );
+        }
+
+        return results;
+    }
 }
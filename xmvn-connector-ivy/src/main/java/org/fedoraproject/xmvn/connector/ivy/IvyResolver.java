@@ -20,6 +20,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.ivy.core.cache.ArtifactOrigin;
 import org.apache.ivy.core.module.descriptor.Artifact;
@@ -242,15 +244,23 @@ public class IvyResolver
     @Override
     public DownloadReport download( Artifact[] artifacts, DownloadOptions options )
     {
-        DownloadReport report = new DownloadReport();
-
+        List<ResolutionRequest> requests = new ArrayList<>( artifacts.length );
         for ( Artifact artifact : artifacts )
         {
-            ArtifactDownloadReport artifactReport = new ArtifactDownloadReport( artifact );
             ResolutionRequest request = new ResolutionRequest();
             request.setArtifact( ivy2aether( artifact ) );
-            ResolutionResult result = getResolver().resolve( request );
-            Path artifactPath = result.getArtifactPath();
+            requests.add( request );
+        }
+
+        List<ResolutionResult> results = getResolver().resolveAll( requests );
+
+        DownloadReport report = new DownloadReport();
+
+        for ( int i = 0; i < artifacts.length; i++ )
+        {
+            Artifact artifact = artifacts[i];
+            ArtifactDownloadReport artifactReport = new ArtifactDownloadReport( artifact );
+            Path artifactPath = results.get( i ).getArtifactPath();
 
             if ( artifactPath != null )
             {
@@ -69,7 +69,8 @@ public class Bug1127804Test
         visitor = createMock( ReportVisitor.class );
 
         IvyResolver ivyResolver = new IvyResolver();
-        ivyResolver.setResolver( resolver );
+        // Batch resolution is delegated to mocked single-artifact resolution
+        ivyResolver.setResolver( request -> resolver.resolve( request ) );
         ivyResolver.setDeployer( deployer );
 
         IvySettings settings = new IvySettings();
@@ -88,6 +88,9 @@ public class DefaultConfigurationMerger
         dominant.getPrefixes().addAll( recessive.getPrefixes() );
 
         dominant.getBlacklist().addAll( recessive.getBlacklist() );
+
+        if ( dominant.getMetadataReaderThreads() == 0 )
+            dominant.setMetadataReaderThreads( recessive.getMetadataReaderThreads() );
     }
 
     private void mergeInstallerSettings( InstallerSettings dominant, InstallerSettings recessive )
@@ -97,6 +100,15 @@ public class DefaultConfigurationMerger
 
         if ( Strings.isNullOrEmpty( dominant.getMetadataDir() ) )
             dominant.setMetadataDir( recessive.getMetadataDir() );
+
+        if ( dominant.getInstallerThreads() == 0 )
+            dominant.setInstallerThreads( recessive.getInstallerThreads() );
+
+        if ( Strings.isNullOrEmpty( dominant.getCopyMode() ) )
+            dominant.setCopyMode( recessive.getCopyMode() );
+
+        if ( Strings.isNullOrEmpty( dominant.getDeduplication() ) )
+            dominant.setDeduplication( recessive.getDeduplication() );
     }
 
     private void mergeConfiguration( Configuration dominant, Configuration recessive )
@@ -17,10 +17,18 @@ package org.fedoraproject.xmvn.deployer.impl;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.Writer;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -53,6 +61,26 @@ import org.fedoraproject.xmvn.utils.ArtifactUtils;
 public class DefaultDeployer
     implements Deployer
 {
+    private static final String ARTIFACTS_START_TAG = "<artifacts>";
+
+    private static final String ARTIFACTS_END_TAG = "</artifacts>";
+
+    /**
+     * Expected contents of installation plan after the last artifact.
+     */
+    private static final Pattern PLAN_TRAILER = Pattern.compile( "\\s*</artifacts>\\s*</metadata>\\s*" );
+
+    /**
+     * Maximal length of installation plan trailer that is recognized when appending artifacts to the plan.
+     */
+    private static final int MAX_TRAILER_LENGTH = 256;
+
+    /**
+     * Monitors serializing access to installation plans from within this JVM. File locks are held on behalf of the
+     * whole JVM, so they can't be used for synchronizing threads.
+     */
+    private static final Map<Path, Object> PLAN_MONITORS = new ConcurrentHashMap<>();
+
     @Override
     public DeploymentResult deploy( DeploymentRequest request )
     {
@@ -60,10 +88,7 @@ public class DefaultDeployer
 
         try
         {
-            PackageMetadata plan = readInstallationPlan( request.getPlanPath() );
-
             ArtifactMetadata am = new ArtifactMetadata();
-            plan.addArtifact( am );
 
             Artifact artifact = request.getArtifact();
             am.setGroupId( artifact.getGroupId() );
@@ -98,7 +123,7 @@ public class DefaultDeployer
                 }
             }
 
-            writeInstallationPlan( plan, request.getPlanPath() );
+            addToInstallationPlan( am, request.getPlanPath() );
         }
         catch ( Exception e )
         {
@@ -108,34 +133,174 @@ public class DefaultDeployer
         return result;
     }
 
-    private PackageMetadata readInstallationPlan( Path planPath )
+    /**
+     * Add artifact to installation plan, creating the plan if it doesn't exist yet.
+     * <p>
+     * Access to the plan is serialized with file lock, so that artifacts can be deployed concurrently by multiple
+     * threads or processes without losing updates. Normally artifact is appended to the plan in place, by rewriting
+     * only the trailer of the plan, so that deploying artifact costs the same regardless of plan size. If the plan
+     * doesn't end with recognized trailer (for example it was written by different tool) then the whole plan is
+     * parsed and rewritten in canonical form, which allows subsequent artifacts to be appended.
+     * 
+     * @param am metadata of deployed artifact
+     * @param planPath path to installation plan
+     * @throws IOException
+     */
+    private void addToInstallationPlan( ArtifactMetadata am, Path planPath )
         throws IOException
     {
-        if ( !Files.exists( planPath ) )
+        planPath = planPath.toAbsolutePath().normalize();
+        Object monitor = PLAN_MONITORS.computeIfAbsent( planPath, path -> new Object() );
+
+        synchronized ( monitor )
         {
-            return new PackageMetadata();
+            try (FileChannel channel =
+                FileChannel.open( planPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE );
+                            FileLock lock = lockInstallationPlan( channel ))
+            {
+                if ( !appendToInstallationPlan( channel, am ) )
+                    rewriteInstallationPlan( channel, am );
+            }
         }
+    }
 
-        try (Reader reader = Files.newBufferedReader( planPath, StandardCharsets.UTF_8 ))
+    private static FileLock lockInstallationPlan( FileChannel channel )
+        throws IOException
+    {
+        for ( ;; )
         {
-            return new MetadataStaxReader().read( reader );
+            try
+            {
+                return channel.lock();
+            }
+            catch ( OverlappingFileLockException e )
+            {
+                // Plan is locked by deployer loaded by another class loader within the same JVM, wait for it
+                try
+                {
+                    Thread.sleep( 10 );
+                }
+                catch ( InterruptedException e1 )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException( "Interrupted while waiting for reactor installation plan lock", e1 );
+                }
+            }
         }
-        catch ( XMLStreamException e )
+    }
+
+    private static byte[] read( FileChannel channel, long position, int length )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        while ( buffer.hasRemaining() )
         {
-            throw new IOException( "Failed to parse reactor installation plan", e );
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+                throw new IOException( "Unexpected end of reactor installation plan" );
         }
+
+        return buffer.array();
+    }
+
+    private static void write( FileChannel channel, long position, byte[] data )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( data );
+        while ( buffer.hasRemaining() )
+            channel.write( buffer, position + buffer.position() );
     }
 
-    private void writeInstallationPlan( PackageMetadata plan, Path planPath )
+    private static String serializeInstallationPlan( PackageMetadata plan )
         throws IOException
     {
-        try (Writer writer = Files.newBufferedWriter( planPath, StandardCharsets.UTF_8 ))
+        try (StringWriter writer = new StringWriter())
         {
             new MetadataStaxWriter().write( writer, plan );
+            return writer.toString();
         }
         catch ( XMLStreamException e )
         {
             throw new IOException( "Unable to write reactor installation plan", e );
         }
     }
+
+    private static int skipWhitespaceBackwards( String str, int index )
+    {
+        while ( index > 0 && Character.isWhitespace( str.charAt( index - 1 ) ) )
+            index--;
+
+        return index;
+    }
+
+    private boolean appendToInstallationPlan( FileChannel channel, ArtifactMetadata am )
+        throws IOException
+    {
+        long size = channel.size();
+        if ( size == 0 )
+            return false;
+
+        // Trailer consists of ASCII characters only, so it can be decoded starting at any byte
+        int tailLength = (int) Math.min( size, MAX_TRAILER_LENGTH );
+        long tailPosition = size - tailLength;
+        String tail = new String( read( channel, tailPosition, tailLength ), StandardCharsets.ISO_8859_1 );
+        int trailerIndex = skipWhitespaceBackwards( tail, tail.lastIndexOf( ARTIFACTS_END_TAG ) );
+        if ( trailerIndex < 0 || !PLAN_TRAILER.matcher( tail.substring( trailerIndex ) ).matches() )
+            return false;
+
+        PackageMetadata plan = new PackageMetadata();
+        plan.addArtifact( am );
+        String document = serializeInstallationPlan( plan );
+        int fragmentStart = document.indexOf( ARTIFACTS_START_TAG );
+        int fragmentEnd = skipWhitespaceBackwards( document, document.lastIndexOf( ARTIFACTS_END_TAG ) );
+        if ( fragmentStart < 0 || fragmentEnd < fragmentStart )
+            return false;
+        fragmentStart += ARTIFACTS_START_TAG.length();
+
+        String fragment = document.substring( fragmentStart, fragmentEnd );
+        byte[] fragmentBytes = fragment.getBytes( StandardCharsets.UTF_8 );
+        byte[] trailerBytes = tail.substring( trailerIndex ).getBytes( StandardCharsets.ISO_8859_1 );
+
+        // Write artifact over existing trailer, followed by the trailer. Plan only grows, so it doesn't need to be
+        // truncated.
+        byte[] data = new byte[fragmentBytes.length + trailerBytes.length];
+        System.arraycopy( fragmentBytes, 0, data, 0, fragmentBytes.length );
+        System.arraycopy( trailerBytes, 0, data, fragmentBytes.length, trailerBytes.length );
+        write( channel, tailPosition + trailerIndex, data );
+
+        return true;
+    }
+
+    private void rewriteInstallationPlan( FileChannel channel, ArtifactMetadata am )
+        throws IOException
+    {
+        PackageMetadata plan;
+        long size = channel.size();
+
+        if ( size == 0 )
+        {
+            plan = new PackageMetadata();
+        }
+        else
+        {
+            if ( size > Integer.MAX_VALUE )
+                throw new IOException( "Reactor installation plan is too large" );
+
+            String document = new String( read( channel, 0, (int) size ), StandardCharsets.UTF_8 );
+
+            try (Reader reader = new StringReader( document ))
+            {
+                plan = new MetadataStaxReader().read( reader );
+            }
+            catch ( XMLStreamException e )
+            {
+                throw new IOException( "Failed to parse reactor installation plan", e );
+            }
+        }
+
+        plan.addArtifact( am );
+
+        channel.truncate( 0 );
+        write( channel, 0, serializeInstallationPlan( plan ).getBytes( StandardCharsets.UTF_8 ) );
+    }
 }
@@ -15,36 +15,99 @@
  */
 package org.fedoraproject.xmvn.resolver.impl;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.base.Strings;
 
 /**
+ * Content-addressed cache of files, shared by all XMvn processes run by the same user.
+ * <p>
+ * Each cache entry is a directory named after SHA-1 hash of cached file content. Entries are written under temporary
+ * names and atomically renamed, so that concurrent processes never see partially written files. Modification time of
+ * cached files is updated whenever they are reused. When total size of entries exceeds limit set by
+ * {@code xmvn.resolver.cacheSizeLimit} system property (in bytes), least recently used entries are removed when JVM
+ * exits.
+ * <p>
+ * To keep JVM exit cheap, cache directory is not scanned on every exit. Instead an estimate of total size of entries is
+ * kept in a small file, to which each process adds sizes of entries it stored. The directory is scanned only if the
+ * estimate exceeds size limit, at most once per grace period. Entries used within grace period are never removed, as
+ * they may have just been resolved by other processes.
+ * 
  * @author Mikolaj Izdebski
  */
 class CacheManager
 {
     private static final String DIGEST_ALGORITHM = "SHA-1";
 
-    private final HexBinaryAdapter hexAdapter;
+    private static final long DEFAULT_SIZE_LIMIT = 256L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SIZE_ESTIMATE_FILE = "size-estimate";
+
+    private static final long GRACE_PERIOD = TimeUnit.HOURS.toMillis( 1 );
+
+    private final Logger logger = LoggerFactory.getLogger( CacheManager.class );
+
+    private final HexBinaryAdapter hexAdapter = new HexBinaryAdapter();
 
-    private final MessageDigest digest;
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial( CacheManager::createDigest );
 
     private static volatile Path cacheHome;
 
+    private final Path cacheDirectory;
+
+    private final long sizeLimit;
+
+    private boolean evictionScheduled;
+
+    /**
+     * Total size of entries stored by this process, not yet added to size estimate.
+     */
+    private final AtomicLong bytesStored = new AtomicLong();
+
     public CacheManager()
+    {
+        this( getCacheHome(), Long.getLong( "xmvn.resolver.cacheSizeLimit", DEFAULT_SIZE_LIMIT ) );
+    }
+
+    CacheManager( Path cacheDirectory, long sizeLimit )
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.sizeLimit = sizeLimit;
+    }
+
+    private static MessageDigest createDigest()
     {
         try
         {
-            hexAdapter = new HexBinaryAdapter();
-            digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
         }
         catch ( NoSuchAlgorithmException e )
         {
@@ -52,10 +115,31 @@ class CacheManager
         }
     }
 
+    private String hash( byte[] content )
+    {
+        MessageDigest md = digest.get();
+        md.reset();
+        return hexAdapter.marshal( md.digest( content ) );
+    }
+
     private String hash( Path path )
         throws IOException
     {
-        return hexAdapter.marshal( digest.digest( Files.readAllBytes( path ) ) );
+        MessageDigest md = digest.get();
+        md.reset();
+
+        ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+        try (FileChannel channel = FileChannel.open( path ))
+        {
+            while ( channel.read( buffer ) >= 0 )
+            {
+                buffer.flip();
+                md.update( buffer );
+                buffer.clear();
+            }
+        }
+
+        return hexAdapter.marshal( md.digest() );
     }
 
     private static Path getPathDefault( String key, Object defaultValue )
@@ -69,7 +153,7 @@ class CacheManager
         return Paths.get( value );
     }
 
-    private static Path getCacheHome()
+    static Path getCacheHome()
     {
         if ( cacheHome == null )
         {
@@ -81,22 +165,269 @@ class CacheManager
         return cacheHome;
     }
 
-    public Path cacheFile( Path path )
+    private interface ContentWriter
+    {
+        void write( Path target )
+            throws IOException;
+    }
+
+    private Path store( String hash, String fileName, ContentWriter writer )
         throws IOException
     {
-        String hash = hash( path );
         String hash1 = hash.substring( 0, 2 );
 
-        Path cacheDir = getCacheHome().resolve( hash1 ).resolve( hash );
-        Files.createDirectories( cacheDir );
+        Path cacheDir = cacheDirectory.resolve( hash1 ).resolve( hash );
+        Path cacheFile = cacheDir.resolve( fileName );
+
+        if ( Files.isRegularFile( cacheFile ) )
+        {
+            try
+            {
+                // Modification time of cached files is used to determine which entries were least recently used
+                Files.setLastModifiedTime( cacheFile, FileTime.fromMillis( System.currentTimeMillis() ) );
+            }
+            catch ( IOException e )
+            {
+                // Ignore
+            }
 
-        Path cacheFile = cacheDir.resolve( path.getFileName() );
+            return cacheFile;
+        }
 
-        if ( !Files.isRegularFile( cacheFile ) )
+        Files.createDirectories( cacheDir );
+
+        // File is written under temporary name and then atomically renamed, so that other threads and processes never
+        // see partially written file
+        Path tempFile = Files.createTempFile( cacheDir, fileName, ".tmp" );
+        try
         {
-            Files.copy( path, cacheFile );
+            writer.write( tempFile );
+            long size = Files.size( tempFile );
+            Files.move( tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            bytesStored.addAndGet( size );
+        }
+        finally
+        {
+            Files.deleteIfExists( tempFile );
         }
 
+        scheduleEviction();
         return cacheFile;
     }
+
+    /**
+     * Store given content in cache. Cached files are content-addressed, so storing the same content again returns path
+     * to the existing file.
+     * 
+     * @param fileName name of cached file
+     * @param content file content
+     * @return path to cached file
+     * @throws IOException if content can't be stored in cache
+     */
+    public Path cacheContent( String fileName, byte[] content )
+        throws IOException
+    {
+        return store( hash( content ), fileName, target -> Files.write( target, content ) );
+    }
+
+    /**
+     * Store copy of given file in cache. Cached files are content-addressed, so storing file with the same content
+     * again returns path to the existing file.
+     * 
+     * @param path file to store
+     * @return path to cached file
+     * @throws IOException if file can't be read or stored in cache
+     */
+    public Path cacheFile( Path path )
+        throws IOException
+    {
+        return store( hash( path ), path.getFileName().toString(),
+                      target -> Files.copy( path, target, StandardCopyOption.REPLACE_EXISTING ) );
+    }
+
+    /**
+     * Determine whether given file is stored in cache.
+     * 
+     * @param path path to file
+     * @return {@code true} iff file is located in cache
+     */
+    public boolean isCached( Path path )
+    {
+        return path.startsWith( cacheDirectory );
+    }
+
+    private synchronized void scheduleEviction()
+    {
+        if ( !evictionScheduled )
+        {
+            Runtime.getRuntime().addShutdownHook( new Thread( this::evictIfNeeded ) );
+            evictionScheduled = true;
+        }
+    }
+
+    private static boolean isHash( String name, int length )
+    {
+        return name.length() == length && name.chars().allMatch( c -> Character.digit( c, 16 ) >= 0 );
+    }
+
+    private static class Entry
+    {
+        final Path path;
+
+        long size;
+
+        long lastUsed;
+
+        public Entry( Path path )
+        {
+            this.path = path;
+        }
+    }
+
+    private List<Entry> listEntries()
+        throws IOException
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( cacheDirectory ))
+        {
+            for ( Path bucket : stream )
+            {
+                // Cache directory contains other files too, they are never evicted
+                if ( !isHash( bucket.getFileName().toString(), 2 ) || !Files.isDirectory( bucket ) )
+                    continue;
+
+                try (DirectoryStream<Path> bucketStream = Files.newDirectoryStream( bucket ))
+                {
+                    for ( Path entryDir : bucketStream )
+                    {
+                        if ( !isHash( entryDir.getFileName().toString(), 40 ) || !Files.isDirectory( entryDir ) )
+                            continue;
+
+                        Entry entry = new Entry( entryDir );
+
+                        boolean empty = true;
+                        try (DirectoryStream<Path> entryStream = Files.newDirectoryStream( entryDir ))
+                        {
+                            for ( Path file : entryStream )
+                            {
+                                BasicFileAttributes attributes =
+                                    Files.readAttributes( file, BasicFileAttributes.class );
+                                entry.size += attributes.size();
+                                entry.lastUsed = Math.max( entry.lastUsed, attributes.lastModifiedTime().toMillis() );
+                                empty = false;
+                            }
+                        }
+
+                        // Empty entry may have just been created by another process, which is about to store file in it
+                        if ( empty )
+                            entry.lastUsed = Files.getLastModifiedTime( entryDir ).toMillis();
+
+                        entries.add( entry );
+                    }
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private void deleteEntry( Entry entry )
+        throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( entry.path ))
+        {
+            for ( Path file : stream )
+                Files.deleteIfExists( file );
+        }
+
+        Files.deleteIfExists( entry.path );
+    }
+
+    /**
+     * Remove least recently used cache entries until total size of cache entries doesn't exceed size limit. Entries
+     * used within grace period are never removed.
+     * 
+     * @return total size of remaining cache entries, or -1 if cache directory couldn't be scanned
+     */
+    long evict()
+    {
+        try
+        {
+            List<Entry> entries = listEntries();
+
+            long totalSize = entries.stream().mapToLong( entry -> entry.size ).sum();
+            if ( totalSize <= sizeLimit )
+                return totalSize;
+
+            entries.sort( Comparator.comparingLong( entry -> entry.lastUsed ) );
+            long graceStart = System.currentTimeMillis() - GRACE_PERIOD;
+
+            for ( Entry entry : entries )
+            {
+                // Entries are sorted, so all remaining entries are within grace period too
+                if ( totalSize <= sizeLimit || entry.lastUsed > graceStart )
+                    break;
+
+                try
+                {
+                    deleteEntry( entry );
+                    totalSize -= entry.size;
+                }
+                catch ( IOException e )
+                {
+                    // Entry may have been removed or updated by another process
+                    logger.debug( "Unable to remove cache entry {}", entry.path, e );
+                }
+            }
+
+            return totalSize;
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Unable to clean up cache {}", cacheDirectory, e );
+            return -1;
+        }
+    }
+
+    /**
+     * Add size of entries stored by this process to estimate of total cache size and remove least recently used
+     * entries if the estimate exceeds size limit. Cache directory is scanned at most once per grace period, after which
+     * the estimate is replaced with actual size of remaining entries.
+     */
+    void evictIfNeeded()
+    {
+        Path estimateFile = cacheDirectory.resolve( SIZE_ESTIMATE_FILE );
+
+        // Estimate file is locked, so that concurrently exiting processes don't lose each other's updates
+        try (FileChannel channel = FileChannel.open( estimateFile, CREATE, READ, WRITE );
+                        FileLock lock = channel.lock())
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( 16 );
+            boolean valid = channel.read( buffer, 0 ) == buffer.capacity();
+            long estimate = valid ? buffer.getLong( 0 ) : 0;
+            long lastScan = valid ? buffer.getLong( 8 ) : 0;
+
+            estimate += bytesStored.getAndSet( 0 );
+
+            long now = System.currentTimeMillis();
+            if ( estimate > sizeLimit && now - lastScan > GRACE_PERIOD )
+            {
+                long actualSize = evict();
+                if ( actualSize >= 0 )
+                {
+                    estimate = actualSize;
+                    lastScan = now;
+                }
+            }
+
+            buffer.clear();
+            buffer.putLong( estimate ).putLong( lastScan ).flip();
+            channel.write( buffer, 0 );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Unable to update cache size estimate {}", estimateFile, e );
+        }
+    }
 }
@@ -0,0 +1,218 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider lookup which caches results of another provider lookup, both in memory and on disk.
+ * <p>
+ * Paths whose providers are expected to be needed can be announced in advance with {@link #prefetch(Path)}. Providers
+ * of all announced paths are then looked up in a single batch, when provider of any path is requested for the first
+ * time.
+ * <p>
+ * Persistent cache is valid only as long as the stamp of underlying database doesn't change. If database stamp is not
+ * available then results are cached in memory only.
+ *
+ * @author Mikolaj Izdebski
+ */
+class CachingProviderLookup
+    implements ProviderLookup
+{
+    private static final String STAMP_KEY = "xmvn.providers.stamp";
+
+    private static final String NO_PROVIDER = "";
+
+    private final Logger logger = LoggerFactory.getLogger( CachingProviderLookup.class );
+
+    private final ProviderLookup backend;
+
+    private final Path cacheFile;
+
+    private final Supplier<String> stampSupplier;
+
+    private Properties cache;
+
+    private String stamp;
+
+    private final Set<Path> pending = new LinkedHashSet<>();
+
+    /**
+     * Create caching provider lookup.
+     *
+     * @param backend provider lookup used to look up providers which are not cached
+     * @param cacheFile location of persistent cache, can be {@code null}
+     * @param stampSupplier supplier of database stamp
+     */
+    public CachingProviderLookup( ProviderLookup backend, Path cacheFile, Supplier<String> stampSupplier )
+    {
+        this.backend = backend;
+        this.cacheFile = cacheFile;
+        this.stampSupplier = stampSupplier;
+    }
+
+    private void loadCache()
+    {
+        if ( cache != null )
+            return;
+
+        cache = new Properties();
+        stamp = stampSupplier.get();
+        if ( stamp == null || cacheFile == null || !Files.isRegularFile( cacheFile ) )
+            return;
+
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream( cacheFile ))
+        {
+            properties.load( is );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Unable to read provider cache {}", cacheFile, e );
+            return;
+        }
+
+        if ( stamp.equals( properties.getProperty( STAMP_KEY ) ) )
+        {
+            properties.remove( STAMP_KEY );
+            cache = properties;
+        }
+        else
+        {
+            logger.debug( "Ignoring stale provider cache {}", cacheFile );
+        }
+    }
+
+    private void storeCache()
+    {
+        if ( stamp == null || cacheFile == null )
+            return;
+
+        Path tempFile = null;
+        try
+        {
+            Properties properties = new Properties();
+            properties.putAll( cache );
+            properties.setProperty( STAMP_KEY, stamp );
+
+            Files.createDirectories( cacheFile.getParent() );
+            tempFile = Files.createTempFile( cacheFile.getParent(), "providers-", ".tmp" );
+            try (OutputStream os = Files.newOutputStream( tempFile ))
+            {
+                properties.store( os, "XMvn provider cache" );
+            }
+
+            Files.move( tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Unable to write provider cache {}", cacheFile, e );
+            try
+            {
+                if ( tempFile != null )
+                    Files.deleteIfExists( tempFile );
+            }
+            catch ( IOException e1 )
+            {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Announce that provider of given path may be needed later.
+     *
+     * @param path path to file
+     */
+    public synchronized void prefetch( Path path )
+    {
+        pending.add( path );
+    }
+
+    /**
+     * Look up providers of all paths announced with {@link #prefetch(Path)} whose providers were not looked up yet.
+     */
+    public void lookupPending()
+    {
+        lookupProviders( Collections.emptySet() );
+    }
+
+    @Override
+    public synchronized Map<Path, String> lookupProviders( Collection<Path> paths )
+    {
+        loadCache();
+
+        pending.addAll( paths );
+        pending.removeIf( path -> cache.containsKey( path.toString() ) );
+
+        if ( !pending.isEmpty() )
+        {
+            Map<Path, String> providers = backend.lookupProviders( pending );
+            boolean modified = false;
+            for ( Path path : pending )
+            {
+                // Paths which backend failed to look up are not cached, so that they are looked up again next time
+                if ( providers.containsKey( path ) )
+                {
+                    String provider = providers.get( path );
+                    cache.setProperty( path.toString(), provider != null ? provider : NO_PROVIDER );
+                    modified = true;
+                }
+            }
+            pending.clear();
+
+            if ( modified )
+                storeCache();
+        }
+
+        Map<Path, String> result = new HashMap<>();
+        for ( Path path : paths )
+        {
+            String provider = cache.getProperty( path.toString() );
+            if ( provider != null )
+                result.put( path, provider.equals( NO_PROVIDER ) ? null : provider );
+        }
+
+        return result;
+    }
+
+    /**
+     * Create default provider lookup, which uses RPM database and caches results in XMvn cache.
+     *
+     * @return default provider lookup
+     */
+    public static CachingProviderLookup createDefault()
+    {
+        Path cacheFile = CacheManager.getCacheHome().resolve( "providers.properties" );
+        return new CachingProviderLookup( new RpmDb(), cacheFile, RpmDb::getDatabaseStamp );
+    }
+}
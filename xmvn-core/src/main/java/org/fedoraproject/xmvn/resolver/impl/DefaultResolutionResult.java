@@ -16,6 +16,7 @@
 package org.fedoraproject.xmvn.resolver.impl;
 
 import java.nio.file.Path;
+import java.util.function.Supplier;
 
 import org.fedoraproject.xmvn.resolver.ResolutionResult;
 
@@ -29,6 +30,8 @@ class DefaultResolutionResult
 
     private String provider;
 
+    private Supplier<String> providerSupplier;
+
     private String compatVersion;
 
     private String namespace;
@@ -58,12 +61,30 @@ class DefaultResolutionResult
     @Override
     public String getProvider()
     {
+        if ( providerSupplier != null )
+        {
+            provider = providerSupplier.get();
+            providerSupplier = null;
+        }
+
         return provider;
     }
 
     public void setProvider( String provider )
     {
         this.provider = provider;
+        this.providerSupplier = null;
+    }
+
+    /**
+     * Set supplier of artifact provider, which will be called when provider is requested for the first time.
+     * 
+     * @param providerSupplier supplier of artifact provider
+     */
+    public void setProvider( Supplier<String> providerSupplier )
+    {
+        this.provider = null;
+        this.providerSupplier = providerSupplier;
     }
 
     @Override
@@ -18,7 +18,16 @@ package org.fedoraproject.xmvn.resolver.impl;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -50,11 +59,15 @@ import com.google.common.base.Objects;
 public class DefaultResolver
     implements Resolver
 {
+    private static final int MAX_POM_THREADS = 8;
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
     private final Logger logger = LoggerFactory.getLogger( DefaultResolver.class );
 
     private final MetadataResolver metadataResolver;
 
-    private static final RpmDb rpmdb = new RpmDb();
+    private final CachingProviderLookup providerLookup;
 
     private final Resolver localRepoResolver;
 
@@ -64,29 +77,251 @@ public class DefaultResolver
 
     private final MockAgent mockAgent;
 
+    private final ResolutionCache resolutionCache;
+
+    /**
+     * Executor used for generating effective POMs concurrently, created lazily.
+     */
+    private ExecutorService pomExecutor;
+
     @Inject
     public DefaultResolver( @Named( "local-repo" ) Resolver localRepoResolver, Configurator configurator )
+    {
+        this( localRepoResolver, configurator, CachingProviderLookup.createDefault() );
+    }
+
+    DefaultResolver( Resolver localRepoResolver, Configurator configurator, CachingProviderLookup providerLookup )
     {
         this.localRepoResolver = localRepoResolver;
+        this.providerLookup = providerLookup;
 
         ResolverSettings settings = configurator.getConfiguration().getResolverSettings();
+        MetadataResolver.setReaderThreadCount( settings.getMetadataReaderThreads() );
         metadataResolver = new MetadataResolver( settings.getMetadataRepositories() );
-        pomGenerator = new EffectivePomGenerator();
         cacheManager = new CacheManager();
+        pomGenerator = new EffectivePomGenerator( cacheManager );
         mockAgent = new MockAgent();
+
+        if ( Boolean.getBoolean( "xmvn.resolver.enableResolutionCache" ) )
+        {
+            String cacheName = MetadataIndex.hashLocations( settings.getMetadataRepositories() ) + ".properties";
+            Path cacheFile = CacheManager.getCacheHome().resolve( "resolutions" ).resolve( cacheName );
+            resolutionCache = new ResolutionCache( cacheFile );
+        }
+        else
+        {
+            resolutionCache = null;
+        }
+    }
+
+    private static String getCacheKey( ResolutionRequest request )
+    {
+        // Resolution result depends on system properties and Java home, which can differ between processes
+        return request.getArtifact() + "|" + request.isPersistentFileNeeded() + "|"
+            + System.getProperty( "xmvn.resolver.disableEffectivePom" ) + "|" + System.getProperty( "type" ) + "|"
+            + System.getProperty( "java.home" );
+    }
+
+    /**
+     * State of artifact resolution which is split into phases, so that effective POMs of multiple artifacts can be
+     * generated concurrently while the remaining phases run in caller thread.
+     */
+    private static class PendingResolution
+    {
+        private final ResolutionRequest request;
+
+        private ResolutionResult localRepoResult;
+
+        private DefaultResolutionResult result;
+
+        private ArtifactMetadata metadata;
+
+        private String compatVersion;
+
+        private Path artifactPath;
+
+        private boolean effectivePomNeeded;
+
+        private IOException effectivePomException;
+
+        public PendingResolution( ResolutionRequest request )
+        {
+            this.request = request;
+        }
     }
 
     @Override
     public ResolutionResult resolve( ResolutionRequest request )
     {
-        Properties properties = new Properties();
-        properties.putAll( System.getProperties() );
+        PendingResolution resolution = startResolution( request );
+        if ( resolution.effectivePomNeeded )
+            generateEffectivePom( resolution );
+        return completeResolution( resolution );
+    }
+
+    @Override
+    public List<ResolutionResult> resolveAll( Collection<ResolutionRequest> requests )
+    {
+        // Read metadata before resolution starts, so that all requests are resolved from the same metadata snapshot
+        metadataResolver.getGeneration();
+
+        // Everything except generation of effective POMs runs in caller thread, in request order
+        List<PendingResolution> resolutions = new ArrayList<>( requests.size() );
+        List<PendingResolution> pendingPoms = new ArrayList<>();
+        for ( ResolutionRequest request : requests )
+        {
+            PendingResolution resolution = startResolution( request );
+            resolutions.add( resolution );
+            if ( resolution.effectivePomNeeded )
+                pendingPoms.add( resolution );
+        }
+
+        generateEffectivePoms( pendingPoms );
+
+        List<ResolutionResult> results = new ArrayList<>( resolutions.size() );
+        for ( PendingResolution resolution : resolutions )
+            results.add( completeResolution( resolution ) );
+
+        // Providers of all resolved artifacts were announced during resolution, look them up in a single batch
+        if ( requests.stream().anyMatch( ResolutionRequest::isProviderNeeded ) )
+            providerLookup.lookupPending();
+
+        return results;
+    }
+
+    private static Thread newThread( Runnable runnable )
+    {
+        Thread thread = new Thread( runnable );
+        thread.setName( DefaultResolver.class.getCanonicalName() + ".worker" );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+    private synchronized ExecutorService getPomExecutor()
+    {
+        if ( pomExecutor == null )
+        {
+            int nThread = Math.min( Math.max( Runtime.getRuntime().availableProcessors(), 1 ), MAX_POM_THREADS );
+            ThreadPoolExecutor executor =
+                new ThreadPoolExecutor( nThread, nThread, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<>(), DefaultResolver::newThread );
+            executor.allowCoreThreadTimeOut( true );
+            pomExecutor = executor;
+        }
+
+        return pomExecutor;
+    }
+
+    /**
+     * Generate effective POMs for given resolutions. POMs are generated concurrently by a dedicated bounded executor,
+     * with context class loader of caller thread.
+     */
+    private void generateEffectivePoms( List<PendingResolution> resolutions )
+    {
+        if ( resolutions.size() < 2 )
+        {
+            resolutions.forEach( this::generateEffectivePom );
+            return;
+        }
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        List<Future<?>> futures = new ArrayList<>( resolutions.size() );
+        for ( PendingResolution resolution : resolutions )
+        {
+            futures.add( getPomExecutor().submit( ( ) ->
+            {
+                Thread thread = Thread.currentThread();
+                ClassLoader workerClassLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader( contextClassLoader );
+                try
+                {
+                    generateEffectivePom( resolution );
+                }
+                finally
+                {
+                    thread.setContextClassLoader( workerClassLoader );
+                }
+            } ) );
+        }
+
+        try
+        {
+            for ( Future<?> future : futures )
+                future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while generating effective POMs", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Failed to generate effective POM", e.getCause() );
+        }
+    }
+
+    private void generateEffectivePom( PendingResolution resolution )
+    {
+        try
+        {
+            resolution.artifactPath = pomGenerator.generateEffectivePom( resolution.metadata,
+                                                                         resolution.request.getArtifact() );
+        }
+        catch ( IOException e )
+        {
+            resolution.effectivePomException = e;
+        }
+    }
+
+    private PendingResolution startResolution( ResolutionRequest request )
+    {
+        PendingResolution resolution = new PendingResolution( request );
 
         ResolutionResult localRepoResult = localRepoResolver.resolve( request );
         if ( localRepoResult.getArtifactPath() != null )
-            return localRepoResult;
+        {
+            resolution.localRepoResult = localRepoResult;
+            return resolution;
+        }
+
+        if ( resolutionCache != null )
+        {
+            resolution.result = resolutionCache.get( metadataResolver.getGeneration(), getCacheKey( request ) );
+            if ( resolution.result != null )
+            {
+                logger.debug( "Artifact {} was resolved to {} (cached)", request.getArtifact(),
+                              resolution.result.getArtifactPath() );
+                return resolution;
+            }
+        }
 
-        Artifact artifact = request.getArtifact();
+        startSystemArtifactResolution( resolution );
+        return resolution;
+    }
+
+    private ResolutionResult completeResolution( PendingResolution resolution )
+    {
+        if ( resolution.localRepoResult != null )
+            return resolution.localRepoResult;
+
+        if ( resolution.result == null )
+            resolution.result = completeSystemArtifactResolution( resolution );
+
+        DefaultResolutionResult result = resolution.result;
+        if ( result.getArtifactPath() != null && resolution.request.isProviderNeeded() )
+        {
+            // Provider is looked up lazily, so that providers of all resolved artifacts can be looked up in one batch
+            Path providerPath = result.getArtifactPath();
+            providerLookup.prefetch( providerPath );
+            result.setProvider( ( ) -> providerLookup.lookupProvider( providerPath ) );
+        }
+
+        return result;
+    }
+
+    private void startSystemArtifactResolution( PendingResolution resolution )
+    {
+        Artifact artifact = resolution.request.getArtifact();
         logger.debug( "Trying to resolve artifact {}", artifact );
 
         String compatVersion;
@@ -121,25 +356,45 @@ public class DefaultResolver
         if ( metadata == null )
         {
             logger.debug( "Failed to resolve artifact: {}", artifact );
-            return new DefaultResolutionResult();
+            resolution.result = new DefaultResolutionResult();
+            return;
         }
 
+        Properties properties = new Properties();
+        properties.putAll( System.getProperties() );
         properties.putAll( metadata.getProperties() );
 
-        if ( !Objects.equal( properties.getProperty( "xmvn.resolver.disableEffectivePom" ), "true" )
-            && Objects.equal( metadata.getExtension(), "pom" )
-            && ( !Objects.equal( properties.getProperty( "type" ), "pom" ) || metadata.getPath() == null ) )
+        // Metadata is shared with metadata resolver, so it must not be modified here
+        resolution.metadata = metadata;
+        resolution.compatVersion = compatVersion;
+        resolution.artifactPath = metadata.getPath() != null ? Paths.get( metadata.getPath() ) : null;
+        resolution.effectivePomNeeded =
+            !Objects.equal( properties.getProperty( "xmvn.resolver.disableEffectivePom" ), "true" )
+                && Objects.equal( metadata.getExtension(), "pom" )
+                && ( !Objects.equal( properties.getProperty( "type" ), "pom" ) || metadata.getPath() == null );
+    }
+
+    private DefaultResolutionResult completeSystemArtifactResolution( PendingResolution resolution )
+    {
+        ResolutionRequest request = resolution.request;
+        Path artifactPath = resolution.artifactPath;
+        boolean temporaryFile = false;
+
+        if ( resolution.effectivePomNeeded )
         {
             try
             {
-                Path pomPath = pomGenerator.generateEffectivePom( metadata, artifact );
+                if ( resolution.effectivePomException != null )
+                    throw resolution.effectivePomException;
 
-                if ( request.isPersistentFileNeeded() )
+                // Effective POMs are normally stored in cache, but temporary file is used when cache is not writable
+                if ( !cacheManager.isCached( artifactPath ) )
                 {
-                    pomPath = cacheManager.cacheFile( pomPath );
+                    if ( request.isPersistentFileNeeded() )
+                        artifactPath = cacheManager.cacheFile( artifactPath );
+                    else
+                        temporaryFile = true;
                 }
-
-                metadata.setPath( pomPath.toString() );
             }
             catch ( IOException e )
             {
@@ -148,7 +403,6 @@ public class DefaultResolver
             }
         }
 
-        Path artifactPath = Paths.get( metadata.getPath() );
         try
         {
             artifactPath = artifactPath.toRealPath();
@@ -158,13 +412,17 @@ public class DefaultResolver
             // Ignore
         }
 
+        ArtifactMetadata metadata = resolution.metadata;
         DefaultResolutionResult result = new DefaultResolutionResult( artifactPath );
         result.setNamespace( metadata.getNamespace() );
-        result.setCompatVersion( compatVersion );
-        if ( request.isProviderNeeded() )
-            result.setProvider( rpmdb.lookupPath( artifactPath ) );
+        result.setCompatVersion( resolution.compatVersion );
+
+        // Temporary files are removed when JVM exits, so they can't be cached
+        if ( resolutionCache != null && !temporaryFile )
+            resolutionCache.put( metadataResolver.getGeneration(), getCacheKey( request ), artifactPath,
+                                 metadata.getNamespace(), resolution.compatVersion );
 
-        logger.debug( "Artifact {} was resolved to {}", artifact, artifactPath );
+        logger.debug( "Artifact {} was resolved to {}", request.getArtifact(), artifactPath );
         return result;
     }
 }
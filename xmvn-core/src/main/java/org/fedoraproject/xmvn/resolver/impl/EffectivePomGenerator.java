@@ -16,22 +16,14 @@
 package org.fedoraproject.xmvn.resolver.impl;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.fedoraproject.xmvn.artifact.Artifact;
 import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
@@ -40,105 +32,228 @@ import org.fedoraproject.xmvn.metadata.DependencyExclusion;
 
 /**
  * Generates effective POM files from package metadata.
+ * <p>
+ * POMs are serialized directly, without building DOM tree. Output is identical to output of JAXP identity transformer
+ * with indentation enabled (2 spaces), which was used to serialize effective POMs previously.
+ * <p>
+ * Generated POMs are stored directly in content-addressed XMvn cache. Each POM is generated at most once per process
+ * for given metadata and artifact, as identified by metadata UUID and artifact coordinates.
  * 
  * @author Mikolaj Izdebski
  */
 class EffectivePomGenerator
 {
-    private final DocumentBuilderFactory documentBuilderFactory;
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private static final String INDENT = "  ";
+
+    private final Logger logger = LoggerFactory.getLogger( EffectivePomGenerator.class );
+
+    private final String lineSeparator = System.lineSeparator();
+
+    private final CacheManager cacheManager;
+
+    private final Map<String, Path> generatedPoms = new ConcurrentHashMap<>();
 
-    private final TransformerFactory transformerFactory;
+    public EffectivePomGenerator( CacheManager cacheManager )
+    {
+        this.cacheManager = cacheManager;
+    }
 
-    public EffectivePomGenerator()
+    private void escapeText( StringBuilder xml, String text )
+        throws IOException
     {
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        transformerFactory = TransformerFactory.newInstance();
+        for ( int i = 0; i < text.length(); i++ )
+        {
+            char c = text.charAt( i );
+
+            if ( c == '&' )
+            {
+                xml.append( "&amp;" );
+            }
+            else if ( c == '<' )
+            {
+                xml.append( "&lt;" );
+            }
+            else if ( c == '>' )
+            {
+                xml.append( "&gt;" );
+            }
+            else if ( c == '\n' )
+            {
+                xml.append( lineSeparator );
+            }
+            else if ( c == '\r' || ( c >= 0x7F && c <= 0x9F ) )
+            {
+                xml.append( "&#" ).append( (int) c ).append( ';' );
+            }
+            else if ( Character.isHighSurrogate( c ) && i + 1 < text.length()
+                && Character.isLowSurrogate( text.charAt( i + 1 ) ) )
+            {
+                // Characters outside of BMP are written as character references
+                xml.append( "&#" ).append( Character.toCodePoint( c, text.charAt( ++i ) ) ).append( ';' );
+            }
+            else if ( ( c < 0x20 && c != '\t' ) || c >= 0xFFFE || Character.isSurrogate( c ) )
+            {
+                throw new IOException( "Invalid XML character detected: " + Integer.toHexString( c ) );
+            }
+            else
+            {
+                xml.append( c );
+            }
+        }
     }
 
-    private void addTextElement( Document document, Element parent, String name, String value )
+    private void newLine( StringBuilder xml, int depth )
     {
-        addTextElement( document, parent, name, value, null );
+        xml.append( lineSeparator );
+        for ( int i = 0; i < depth; i++ )
+            xml.append( INDENT );
     }
 
-    private void addTextElement( Document document, Element parent, String name, String value, String defaultValue )
+    private void startElement( StringBuilder xml, int depth, String name )
+    {
+        newLine( xml, depth );
+        xml.append( '<' ).append( name ).append( '>' );
+    }
+
+    private void endElement( StringBuilder xml, int depth, String name )
+    {
+        newLine( xml, depth );
+        xml.append( "</" ).append( name ).append( '>' );
+    }
+
+    private void addTextElement( StringBuilder xml, int depth, String name, String value )
+        throws IOException
+    {
+        addTextElement( xml, depth, name, value, null );
+    }
+
+    private void addTextElement( StringBuilder xml, int depth, String name, String value, String defaultValue )
+        throws IOException
     {
         if ( value == null || defaultValue == null || !value.equals( defaultValue ) )
         {
-            Element child = document.createElement( name );
-            parent.appendChild( child );
-            child.appendChild( document.createTextNode( value == null ? defaultValue : value ) );
+            String text = value == null ? defaultValue : value;
+
+            newLine( xml, depth );
+            if ( text == null || text.isEmpty() )
+            {
+                xml.append( '<' ).append( name ).append( "/>" );
+            }
+            else
+            {
+                xml.append( '<' ).append( name ).append( '>' );
+                escapeText( xml, text );
+                xml.append( "</" ).append( name ).append( '>' );
+            }
         }
     }
 
-    private void addExclusion( Document document, Element exclusions, DependencyExclusion exclusion )
+    private void addExclusion( StringBuilder xml, int depth, DependencyExclusion exclusion )
+        throws IOException
     {
-        Element exclusionNode = document.createElement( "exclusion" );
-        exclusions.appendChild( exclusionNode );
-        addTextElement( document, exclusionNode, "groupId", exclusion.getGroupId() );
-        addTextElement( document, exclusionNode, "artifactId", exclusion.getArtifactId() );
+        startElement( xml, depth, "exclusion" );
+        addTextElement( xml, depth + 1, "groupId", exclusion.getGroupId() );
+        addTextElement( xml, depth + 1, "artifactId", exclusion.getArtifactId() );
+        endElement( xml, depth, "exclusion" );
     }
 
-    private void addDependency( Document document, Element dependencies, Dependency dependency )
+    private void addDependency( StringBuilder xml, int depth, Dependency dependency )
+        throws IOException
     {
-        Element dependencyNode = document.createElement( "dependency" );
-        dependencies.appendChild( dependencyNode );
-        addTextElement( document, dependencyNode, "groupId", dependency.getGroupId() );
-        addTextElement( document, dependencyNode, "artifactId", dependency.getArtifactId() );
-        addTextElement( document, dependencyNode, "type", dependency.getExtension(), Artifact.DEFAULT_EXTENSION );
-        addTextElement( document, dependencyNode, "classifier", dependency.getClassifier(), "" );
-        addTextElement( document, dependencyNode, "version", dependency.getRequestedVersion() );
+        startElement( xml, depth, "dependency" );
+        addTextElement( xml, depth + 1, "groupId", dependency.getGroupId() );
+        addTextElement( xml, depth + 1, "artifactId", dependency.getArtifactId() );
+        addTextElement( xml, depth + 1, "type", dependency.getExtension(), Artifact.DEFAULT_EXTENSION );
+        addTextElement( xml, depth + 1, "classifier", dependency.getClassifier(), "" );
+        addTextElement( xml, depth + 1, "version", dependency.getRequestedVersion() );
         Boolean optional = Boolean.valueOf( dependency.isOptional() != null && dependency.isOptional() );
-        addTextElement( document, dependencyNode, "optional", optional.toString(), "false" );
+        addTextElement( xml, depth + 1, "optional", optional.toString(), "false" );
+
+        if ( !dependency.getExclusions().isEmpty() )
+        {
+            startElement( xml, depth + 1, "exclusions" );
+            for ( DependencyExclusion exclusion : dependency.getExclusions() )
+                addExclusion( xml, depth + 2, exclusion );
+            endElement( xml, depth + 1, "exclusions" );
+        }
 
-        Element exclusions = document.createElement( "exclusions" );
-        for ( DependencyExclusion exclusion : dependency.getExclusions() )
-            addExclusion( document, exclusions, exclusion );
-        if ( exclusions.hasChildNodes() )
-            dependencyNode.appendChild( exclusions );
+        endElement( xml, depth, "dependency" );
     }
 
-    private void addProject( Document document, ArtifactMetadata metadata, Artifact artifact )
+    private void addProject( StringBuilder xml, ArtifactMetadata metadata, Artifact artifact )
+        throws IOException
     {
-        Element project = document.createElement( "project" );
-        document.appendChild( project );
-        addTextElement( document, project, "modelVersion", "4.0.0" );
-        addTextElement( document, project, "groupId", artifact.getGroupId() );
-        addTextElement( document, project, "artifactId", artifact.getArtifactId() );
-        addTextElement( document, project, "version", artifact.getVersion() );
-
-        Element dependencies = document.createElement( "dependencies" );
-        for ( Dependency dependency : metadata.getDependencies() )
-            addDependency( document, dependencies, dependency );
-        if ( dependencies.hasChildNodes() )
-            project.appendChild( dependencies );
+        xml.append( XML_DECLARATION ).append( "<project>" );
+        addTextElement( xml, 1, "modelVersion", "4.0.0" );
+        addTextElement( xml, 1, "groupId", artifact.getGroupId() );
+        addTextElement( xml, 1, "artifactId", artifact.getArtifactId() );
+        addTextElement( xml, 1, "version", artifact.getVersion() );
+
+        if ( !metadata.getDependencies().isEmpty() )
+        {
+            startElement( xml, 1, "dependencies" );
+            for ( Dependency dependency : metadata.getDependencies() )
+                addDependency( xml, 2, dependency );
+            endElement( xml, 1, "dependencies" );
+        }
+
+        endElement( xml, 0, "project" );
+        xml.append( lineSeparator );
+    }
+
+    /**
+     * Serialize effective POM of given artifact.
+     * 
+     * @param metadata artifact metadata
+     * @param artifact artifact for which effective POM is generated
+     * @return effective POM contents
+     * @throws IOException if metadata can't be represented in XML
+     */
+    String serializeEffectivePom( ArtifactMetadata metadata, Artifact artifact )
+        throws IOException
+    {
+        StringBuilder xml = new StringBuilder( 1024 );
+        addProject( xml, metadata, artifact );
+        return xml.toString();
     }
 
     public Path generateEffectivePom( ArtifactMetadata metadata, Artifact artifact )
         throws IOException
     {
+        // Metadata without UUID can't be identified reliably, so POMs generated from it are not remembered
+        String key = metadata.getUuid() == null ? null : metadata.getUuid() + ":" + artifact.getGroupId() + ":"
+            + artifact.getArtifactId() + ":" + artifact.getVersion();
+
+        if ( key != null )
+        {
+            Path pomPath = generatedPoms.get( key );
+            if ( pomPath != null && Files.isRegularFile( pomPath ) )
+                return pomPath;
+        }
+
         String artifactIdNormalized = artifact.getArtifactId().replace( '/', '.' );
         String versionNormalized = artifact.getVersion().replace( '/', '.' );
         String artifactFileName = artifactIdNormalized + "-" + versionNormalized + ".pom";
-        Path pomDir = TempManager.createTempDirectory( "xmvn-" + metadata.getUuid() );
-        Path pomPath = pomDir.resolve( artifactFileName );
+        byte[] content = serializeEffectivePom( metadata, artifact ).getBytes( StandardCharsets.UTF_8 );
 
-        try (OutputStream os = Files.newOutputStream( pomPath ))
+        Path pomPath;
+        try
         {
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.newDocument();
-            document.setXmlStandalone( true );
-            addProject( document, metadata, artifact );
-
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
-            transformer.setOutputProperty( "{http://xml.apache.org/xslt}indent-amount", "2" );
-            transformer.transform( new DOMSource( document ), new StreamResult( os ) );
-
-            return pomPath;
+            pomPath = cacheManager.cacheContent( artifactFileName, content );
         }
-        catch ( ParserConfigurationException | TransformerException e )
+        catch ( IOException e )
         {
-            throw new IOException( "Unable to generate effectvie POM", e );
+            logger.debug( "Unable to store effective POM in cache, using temporary file instead", e );
+            Path pomDir = TempManager.createTempDirectory( "xmvn-" + metadata.getUuid() );
+            pomPath = pomDir.resolve( artifactFileName );
+            Files.write( pomPath, content );
         }
+
+        if ( key != null )
+            generatedPoms.put( key, pomPath );
+
+        return pomPath;
     }
 }
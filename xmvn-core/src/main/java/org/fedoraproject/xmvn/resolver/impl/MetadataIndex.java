@@ -0,0 +1,628 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.fedoraproject.xmvn.metadata.ArtifactAlias;
+import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
+import org.fedoraproject.xmvn.metadata.Dependency;
+import org.fedoraproject.xmvn.metadata.DependencyExclusion;
+import org.fedoraproject.xmvn.metadata.PackageMetadata;
+import org.fedoraproject.xmvn.metadata.SkippedArtifactMetadata;
+
+/**
+ * Persistent binary index of system artifact metadata.
+ * <p>
+ * The index maps each metadata fragment (identified by its path, modification time and size) to compact binary
+ * representation of metadata read from it, so that unchanged fragments don't need to be parsed again by subsequent
+ * XMvn invocations. Listings of metadata directories are stored together with directory modification times.
+ * <p>
+ * Index files are stored in XMvn cache directory, one file per list of metadata locations. The index file is mapped
+ * into memory when loaded and individual fragments are decoded only when requested. Updated index is written to
+ * temporary file which is then atomically moved in place, so concurrent processes never see partially written index.
+ * <p>
+ * Index can also be purely in-memory, in which case it is never loaded from or written to disk. In either case
+ * decoded metadata is retained in memory, so that the same index instance can be used to re-read metadata cheaply
+ * after some fragments were added, modified or removed.
+ *
+ * @author Mikolaj Izdebski
+ */
+class MetadataIndex
+{
+    private static final int MAGIC = 0x584D4958;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final Logger logger = LoggerFactory.getLogger( MetadataIndex.class );
+
+    private final Path indexPath;
+
+    private final Map<String, DirectoryEntry> loadedDirectories = new LinkedHashMap<>();
+
+    private final Map<String, FragmentEntry> loadedFragments = new LinkedHashMap<>();
+
+    private final Map<String, DirectoryEntry> currentDirectories = new LinkedHashMap<>();
+
+    private final Map<String, FragmentEntry> currentFragments = new LinkedHashMap<>();
+
+    private boolean modified;
+
+    private String generation;
+
+    private static class DirectoryEntry
+    {
+        final long mtime;
+
+        final String[] fileNames;
+
+        public DirectoryEntry( long mtime, String[] fileNames )
+        {
+            this.mtime = mtime;
+            this.fileNames = fileNames;
+        }
+    }
+
+    private static class FragmentEntry
+    {
+        final long mtime;
+
+        final long size;
+
+        final ByteBuffer payload;
+
+        PackageMetadata metadata;
+
+        public FragmentEntry( long mtime, long size, ByteBuffer payload, PackageMetadata metadata )
+        {
+            this.mtime = mtime;
+            this.size = size;
+            this.payload = payload;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Create in-memory metadata index.
+     */
+    public MetadataIndex()
+    {
+        indexPath = null;
+    }
+
+    /**
+     * Create persistent metadata index, loading its contents from XMvn cache.
+     * 
+     * @param cacheHome XMvn cache directory
+     * @param metadataLocations list of metadata locations for which the index is created
+     */
+    public MetadataIndex( Path cacheHome, List<String> metadataLocations )
+    {
+        indexPath = cacheHome.resolve( "metadata-index" ).resolve( hashLocations( metadataLocations ) + ".idx" );
+        load();
+    }
+
+    static String hashLocations( List<String> metadataLocations )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            for ( String location : metadataLocations )
+            {
+                digest.update( location.getBytes( StandardCharsets.UTF_8 ) );
+                digest.update( (byte) 0 );
+            }
+            return new HexBinaryAdapter().marshal( digest.digest() ).toLowerCase();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( "Digest algorithm SHA-1 is not available", e );
+        }
+    }
+
+    private static long getModificationTime( BasicFileAttributes attributes )
+    {
+        return attributes.lastModifiedTime().to( TimeUnit.NANOSECONDS );
+    }
+
+    private void load()
+    {
+        if ( !Files.isRegularFile( indexPath ) )
+            return;
+
+        try (FileChannel channel = FileChannel.open( indexPath, StandardOpenOption.READ ))
+        {
+            ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION )
+            {
+                logger.debug( "Ignoring metadata index {} with unknown format", indexPath );
+                return;
+            }
+
+            int directoryCount = buffer.getInt();
+            for ( int i = 0; i < directoryCount; i++ )
+            {
+                String path = readString( buffer );
+                long mtime = buffer.getLong();
+                String[] fileNames = new String[buffer.getInt()];
+                for ( int j = 0; j < fileNames.length; j++ )
+                    fileNames[j] = readString( buffer );
+                loadedDirectories.put( path, new DirectoryEntry( mtime, fileNames ) );
+            }
+
+            int fragmentCount = buffer.getInt();
+            for ( int i = 0; i < fragmentCount; i++ )
+            {
+                String path = readString( buffer );
+                long mtime = buffer.getLong();
+                long size = buffer.getLong();
+                int length = buffer.getInt();
+                ByteBuffer payload = buffer.slice();
+                payload.limit( length );
+                buffer.position( buffer.position() + length );
+                loadedFragments.put( path, new FragmentEntry( mtime, size, payload, null ) );
+            }
+
+            logger.debug( "Loaded metadata index {} with {} fragments", indexPath, fragmentCount );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            logger.debug( "Unable to load metadata index {}", indexPath, e );
+            loadedDirectories.clear();
+            loadedFragments.clear();
+        }
+    }
+
+    /**
+     * Get sorted list of metadata fragments in given directory, as recorded in the index.
+     *
+     * @param directory metadata directory
+     * @param attributes current attributes of the directory
+     * @return sorted file names or {@code null} if the index has no up-to-date listing of given directory
+     */
+    public synchronized String[] lookupDirectory( Path directory, BasicFileAttributes attributes )
+    {
+        String key = directory.toString();
+        DirectoryEntry entry = loadedDirectories.get( key );
+        if ( entry == null || entry.mtime != getModificationTime( attributes ) )
+            return null;
+
+        currentDirectories.put( key, entry );
+        return entry.fileNames.clone();
+    }
+
+    /**
+     * Record listing of metadata directory in the index.
+     *
+     * @param directory metadata directory
+     * @param attributes attributes of the directory, as read before it was listed
+     * @param fileNames sorted file names
+     */
+    public synchronized void updateDirectory( Path directory, BasicFileAttributes attributes, String[] fileNames )
+    {
+        currentDirectories.put( directory.toString(),
+                                new DirectoryEntry( getModificationTime( attributes ), fileNames.clone() ) );
+        modified = true;
+    }
+
+    /**
+     * Get metadata read from given fragment, as recorded in the index.
+     *
+     * @param path metadata fragment
+     * @param attributes current attributes of the fragment
+     * @return indexed metadata or {@code null} if the index has no up-to-date copy of given fragment
+     */
+    public synchronized PackageMetadata lookupFragment( Path path, BasicFileAttributes attributes )
+    {
+        String key = path.toString();
+        FragmentEntry entry = loadedFragments.get( key );
+        if ( entry == null || entry.mtime != getModificationTime( attributes ) || entry.size != attributes.size() )
+            return null;
+
+        try
+        {
+            if ( entry.metadata == null )
+                entry.metadata = readPackageMetadata( entry.payload.duplicate() );
+            currentFragments.put( key, entry );
+            return entry.metadata;
+        }
+        catch ( RuntimeException e )
+        {
+            logger.debug( "Corrupt metadata index entry for {}", path, e );
+            return null;
+        }
+    }
+
+    /**
+     * Record metadata read from given fragment in the index.
+     *
+     * @param path metadata fragment
+     * @param attributes attributes of the fragment, as read before it was parsed
+     * @param metadata metadata read from the fragment
+     */
+    public synchronized void updateFragment( Path path, BasicFileAttributes attributes, PackageMetadata metadata )
+    {
+        try
+        {
+            ByteBuffer payload = null;
+            if ( indexPath != null )
+            {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (DataOutputStream dos = new DataOutputStream( bos ))
+                {
+                    writePackageMetadata( dos, metadata );
+                }
+                payload = ByteBuffer.wrap( bos.toByteArray() );
+            }
+
+            currentFragments.put( path.toString(), new FragmentEntry( getModificationTime( attributes ),
+                                                                      attributes.size(), payload, metadata ) );
+            modified = true;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Finish updating the index. Entries which were not looked up or updated since the previous call to this method are
+     * discarded. Persistent index is written to disk if its contents changed.
+     */
+    public synchronized void store()
+    {
+        generation = computeGeneration();
+
+        if ( indexPath != null
+            && ( modified || !currentFragments.keySet().equals( loadedFragments.keySet() )
+                || !currentDirectories.keySet().equals( loadedDirectories.keySet() ) ) )
+            write();
+
+        loadedDirectories.clear();
+        loadedDirectories.putAll( currentDirectories );
+        currentDirectories.clear();
+        loadedFragments.clear();
+        loadedFragments.putAll( currentFragments );
+        currentFragments.clear();
+        modified = false;
+    }
+
+    private String computeGeneration()
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (DataOutputStream dos = new DataOutputStream( bos ))
+            {
+                for ( Entry<String, DirectoryEntry> entry : currentDirectories.entrySet() )
+                {
+                    writeString( dos, entry.getKey() );
+                    dos.writeLong( entry.getValue().mtime );
+                }
+                for ( Entry<String, FragmentEntry> entry : currentFragments.entrySet() )
+                {
+                    writeString( dos, entry.getKey() );
+                    dos.writeLong( entry.getValue().mtime );
+                    dos.writeLong( entry.getValue().size );
+                }
+            }
+            return new HexBinaryAdapter().marshal( digest.digest( bos.toByteArray() ) ).toLowerCase();
+        }
+        catch ( IOException | NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Get generation of indexed metadata. Generation is a string which changes whenever any of indexed metadata
+     * fragments is added, removed or modified.
+     * 
+     * @return generation of metadata indexed by the last call to {@link #store()}, or {@code null} if metadata was not
+     *         indexed yet
+     */
+    public synchronized String getGeneration()
+    {
+        return generation;
+    }
+
+    private void write()
+    {
+        Path tempPath = null;
+        try
+        {
+            Files.createDirectories( indexPath.getParent() );
+            tempPath = Files.createTempFile( indexPath.getParent(), "index-", ".tmp" );
+
+            try (OutputStream os = Files.newOutputStream( tempPath ))
+            {
+                DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( os, 65536 ) );
+                dos.writeInt( MAGIC );
+                dos.writeInt( FORMAT_VERSION );
+
+                dos.writeInt( currentDirectories.size() );
+                for ( Entry<String, DirectoryEntry> entry : currentDirectories.entrySet() )
+                {
+                    writeString( dos, entry.getKey() );
+                    dos.writeLong( entry.getValue().mtime );
+                    dos.writeInt( entry.getValue().fileNames.length );
+                    for ( String fileName : entry.getValue().fileNames )
+                        writeString( dos, fileName );
+                }
+
+                dos.writeInt( currentFragments.size() );
+                for ( Entry<String, FragmentEntry> entry : currentFragments.entrySet() )
+                {
+                    writeString( dos, entry.getKey() );
+                    dos.writeLong( entry.getValue().mtime );
+                    dos.writeLong( entry.getValue().size );
+                    ByteBuffer payload = entry.getValue().payload.duplicate();
+                    byte[] bytes = new byte[payload.remaining()];
+                    payload.get( bytes );
+                    dos.writeInt( bytes.length );
+                    dos.write( bytes );
+                }
+
+                dos.flush();
+            }
+
+            Files.move( tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            logger.debug( "Stored metadata index {} with {} fragments", indexPath, currentFragments.size() );
+        }
+        catch ( IOException e )
+        {
+            // Ignore. Failure to write the index only means that metadata will need to be parsed again next time.
+            logger.debug( "Unable to store metadata index {}", indexPath, e );
+            try
+            {
+                if ( tempPath != null )
+                    Files.deleteIfExists( tempPath );
+            }
+            catch ( IOException e1 )
+            {
+                // Ignore
+            }
+        }
+    }
+
+    private static void writeString( DataOutputStream dos, String value )
+        throws IOException
+    {
+        if ( value == null )
+        {
+            dos.writeInt( -1 );
+        }
+        else
+        {
+            byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+            dos.writeInt( bytes.length );
+            dos.write( bytes );
+        }
+    }
+
+    private static String readString( ByteBuffer buffer )
+    {
+        int length = buffer.getInt();
+        if ( length < 0 )
+            return null;
+
+        if ( length > buffer.remaining() )
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static void writeProperties( DataOutputStream dos, Properties properties )
+        throws IOException
+    {
+        dos.writeInt( properties.size() );
+        for ( String key : properties.stringPropertyNames() )
+        {
+            writeString( dos, key );
+            writeString( dos, properties.getProperty( key ) );
+        }
+    }
+
+    private static void readProperties( ByteBuffer buffer, Properties properties )
+    {
+        int count = buffer.getInt();
+        for ( int i = 0; i < count; i++ )
+        {
+            String key = readString( buffer );
+            properties.setProperty( key, readString( buffer ) );
+        }
+    }
+
+    private static void writePackageMetadata( DataOutputStream dos, PackageMetadata metadata )
+        throws IOException
+    {
+        writeString( dos, metadata.getUuid() );
+        writeProperties( dos, metadata.getProperties() );
+
+        dos.writeInt( metadata.getArtifacts().size() );
+        for ( ArtifactMetadata artifact : metadata.getArtifacts() )
+            writeArtifactMetadata( dos, artifact );
+
+        dos.writeInt( metadata.getSkippedArtifacts().size() );
+        for ( SkippedArtifactMetadata skipped : metadata.getSkippedArtifacts() )
+        {
+            writeString( dos, skipped.getGroupId() );
+            writeString( dos, skipped.getArtifactId() );
+            writeString( dos, skipped.getExtension() );
+            writeString( dos, skipped.getClassifier() );
+        }
+    }
+
+    private static PackageMetadata readPackageMetadata( ByteBuffer buffer )
+    {
+        PackageMetadata metadata = new PackageMetadata();
+        metadata.setUuid( readString( buffer ) );
+        readProperties( buffer, metadata.getProperties() );
+
+        int artifactCount = buffer.getInt();
+        for ( int i = 0; i < artifactCount; i++ )
+            metadata.getArtifacts().add( readArtifactMetadata( buffer ) );
+
+        int skippedCount = buffer.getInt();
+        for ( int i = 0; i < skippedCount; i++ )
+        {
+            SkippedArtifactMetadata skipped = new SkippedArtifactMetadata();
+            skipped.setGroupId( readString( buffer ) );
+            skipped.setArtifactId( readString( buffer ) );
+            skipped.setExtension( readString( buffer ) );
+            skipped.setClassifier( readString( buffer ) );
+            metadata.getSkippedArtifacts().add( skipped );
+        }
+
+        return metadata;
+    }
+
+    private static void writeArtifactMetadata( DataOutputStream dos, ArtifactMetadata artifact )
+        throws IOException
+    {
+        writeString( dos, artifact.getGroupId() );
+        writeString( dos, artifact.getArtifactId() );
+        writeString( dos, artifact.getExtension() );
+        writeString( dos, artifact.getClassifier() );
+        writeString( dos, artifact.getVersion() );
+        writeString( dos, artifact.getPath() );
+        writeString( dos, artifact.getNamespace() );
+        writeString( dos, artifact.getUuid() );
+        writeString( dos, artifact.getChecksum() );
+        writeProperties( dos, artifact.getProperties() );
+
+        dos.writeInt( artifact.getCompatVersions().size() );
+        for ( String version : artifact.getCompatVersions() )
+            writeString( dos, version );
+
+        dos.writeInt( artifact.getAliases().size() );
+        for ( ArtifactAlias alias : artifact.getAliases() )
+        {
+            writeString( dos, alias.getGroupId() );
+            writeString( dos, alias.getArtifactId() );
+            writeString( dos, alias.getExtension() );
+            writeString( dos, alias.getClassifier() );
+        }
+
+        dos.writeInt( artifact.getDependencies().size() );
+        for ( Dependency dependency : artifact.getDependencies() )
+        {
+            writeString( dos, dependency.getGroupId() );
+            writeString( dos, dependency.getArtifactId() );
+            writeString( dos, dependency.getExtension() );
+            writeString( dos, dependency.getClassifier() );
+            writeString( dos, dependency.getRequestedVersion() );
+            writeString( dos, dependency.getResolvedVersion() );
+            writeString( dos, dependency.getNamespace() );
+            dos.writeByte( dependency.isOptional() == null ? -1 : dependency.isOptional() ? 1 : 0 );
+
+            dos.writeInt( dependency.getExclusions().size() );
+            for ( DependencyExclusion exclusion : dependency.getExclusions() )
+            {
+                writeString( dos, exclusion.getGroupId() );
+                writeString( dos, exclusion.getArtifactId() );
+            }
+        }
+    }
+
+    private static ArtifactMetadata readArtifactMetadata( ByteBuffer buffer )
+    {
+        ArtifactMetadata artifact = new ArtifactMetadata();
+        artifact.setGroupId( readString( buffer ) );
+        artifact.setArtifactId( readString( buffer ) );
+        artifact.setExtension( readString( buffer ) );
+        artifact.setClassifier( readString( buffer ) );
+        artifact.setVersion( readString( buffer ) );
+        artifact.setPath( readString( buffer ) );
+        artifact.setNamespace( readString( buffer ) );
+        artifact.setUuid( readString( buffer ) );
+        artifact.setChecksum( readString( buffer ) );
+        readProperties( buffer, artifact.getProperties() );
+
+        int versionCount = buffer.getInt();
+        for ( int i = 0; i < versionCount; i++ )
+            artifact.getCompatVersions().add( readString( buffer ) );
+
+        int aliasCount = buffer.getInt();
+        for ( int i = 0; i < aliasCount; i++ )
+        {
+            ArtifactAlias alias = new ArtifactAlias();
+            alias.setGroupId( readString( buffer ) );
+            alias.setArtifactId( readString( buffer ) );
+            alias.setExtension( readString( buffer ) );
+            alias.setClassifier( readString( buffer ) );
+            artifact.getAliases().add( alias );
+        }
+
+        int dependencyCount = buffer.getInt();
+        for ( int i = 0; i < dependencyCount; i++ )
+        {
+            Dependency dependency = new Dependency();
+            dependency.setGroupId( readString( buffer ) );
+            dependency.setArtifactId( readString( buffer ) );
+            dependency.setExtension( readString( buffer ) );
+            dependency.setClassifier( readString( buffer ) );
+            dependency.setRequestedVersion( readString( buffer ) );
+            dependency.setResolvedVersion( readString( buffer ) );
+            dependency.setNamespace( readString( buffer ) );
+            byte optional = buffer.get();
+            dependency.setOptional( optional < 0 ? null : Boolean.valueOf( optional != 0 ) );
+
+            int exclusionCount = buffer.getInt();
+            for ( int j = 0; j < exclusionCount; j++ )
+            {
+                DependencyExclusion exclusion = new DependencyExclusion();
+                exclusion.setGroupId( readString( buffer ) );
+                exclusion.setArtifactId( readString( buffer ) );
+                dependency.getExclusions().add( exclusion );
+            }
+
+            artifact.getDependencies().add( dependency );
+        }
+
+        return artifact;
+    }
+}
@@ -23,18 +23,25 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
@@ -45,28 +52,139 @@ import org.fedoraproject.xmvn.metadata.PackageMetadata;
 import org.fedoraproject.xmvn.metadata.io.stax.MetadataStaxReader;
 
 /**
+ * Reads metadata files in parallel.
+ * <p>
+ * All metadata readers share one executor, which is created lazily. By default its size is determined from the number
+ * of available processors, but it can be changed with {@link #setThreadCount(int)}. Worker threads are daemon
+ * threads and they terminate after being idle for a while. If {@code xmvn.resolver.virtualThreads} system property is
+ * set to {@code true} and the JVM supports virtual threads, then each metadata file is read in a new virtual thread
+ * instead.
+ * 
  * @author Mikolaj Izdebski
  */
 class MetadataReader
 {
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static ExecutorService sharedExecutor;
+
+    private static int threadCount;
+
     private final Logger logger = LoggerFactory.getLogger( MetadataReader.class );
 
-    private final ThreadPoolExecutor executor;
+    private static int getDefaultThreadCount()
+    {
+        return 2 * Math.min( Math.max( Runtime.getRuntime().availableProcessors(), 1 ), 8 );
+    }
 
-    public MetadataReader()
+    private static Thread newThread( Runnable runnable )
     {
-        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
-        int nThread = 2 * Math.min( Math.max( Runtime.getRuntime().availableProcessors(), 1 ), 8 );
-        executor = new ThreadPoolExecutor( nThread, nThread, 1, TimeUnit.MINUTES, queue, ( runnable ) -> {
-            Thread thread = new Thread( runnable );
-            thread.setName( MetadataReader.class.getCanonicalName() + ".worker" );
-            thread.setDaemon( true );
-            return thread;
-        } );
+        Thread thread = new Thread( runnable );
+        thread.setName( MetadataReader.class.getCanonicalName() + ".worker" );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+    private static ExecutorService createVirtualThreadExecutor()
+    {
+        try
+        {
+            // Virtual threads are available since Java 21, but XMvn can run on older JVMs too
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch ( ReflectiveOperationException e )
+        {
+            LoggerFactory.getLogger( MetadataReader.class ).debug( "Virtual threads are not available", e );
+            return null;
+        }
+    }
+
+    private static ExecutorService createExecutor()
+    {
+        if ( Boolean.getBoolean( "xmvn.resolver.virtualThreads" ) )
+        {
+            ExecutorService executor = createVirtualThreadExecutor();
+            if ( executor != null )
+                return executor;
+        }
+
+        int nThread = threadCount > 0 ? threadCount : getDefaultThreadCount();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( nThread, nThread, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                              new LinkedBlockingQueue<>(), MetadataReader::newThread );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    private static synchronized ExecutorService getSharedExecutor()
+    {
+        if ( sharedExecutor == null )
+            sharedExecutor = createExecutor();
+
+        return sharedExecutor;
+    }
+
+    /**
+     * Set maximal number of threads used for reading metadata by all metadata readers.
+     * 
+     * @param count number of threads, or 0 to use default number of threads
+     */
+    public static synchronized void setThreadCount( int count )
+    {
+        if ( count < 0 )
+            throw new IllegalArgumentException( "Number of metadata reader threads must not be negative" );
+
+        threadCount = count;
+
+        if ( sharedExecutor instanceof ThreadPoolExecutor )
+        {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) sharedExecutor;
+            int nThread = count > 0 ? count : getDefaultThreadCount();
+
+            // Core pool size must never exceed maximal pool size
+            if ( nThread > executor.getMaximumPoolSize() )
+            {
+                executor.setMaximumPoolSize( nThread );
+                executor.setCorePoolSize( nThread );
+            }
+            else
+            {
+                executor.setCorePoolSize( nThread );
+                executor.setMaximumPoolSize( nThread );
+            }
+        }
+    }
+
+    /**
+     * Shut down executor shared by metadata readers. Tasks which were already submitted are completed. Metadata
+     * readers can still be used after shutdown, in which case a new executor is created.
+     */
+    public static synchronized void shutdown()
+    {
+        if ( sharedExecutor != null )
+        {
+            sharedExecutor.shutdown();
+            sharedExecutor = null;
+        }
     }
 
     public List<PackageMetadata> readMetadata( List<String> metadataLocations )
     {
+        return readMetadata( metadataLocations, null );
+    }
+
+    /**
+     * Read metadata from given locations, reusing metadata stored in given index for fragments which did not change
+     * since the index was written.
+     * 
+     * @param metadataLocations list of metadata files or directories containing metadata files
+     * @param index metadata index, can be {@code null}
+     * @return list of package metadata, in the same order as metadata fragments were specified or listed
+     */
+    public List<PackageMetadata> readMetadata( List<String> metadataLocations, MetadataIndex index )
+    {
+        long startTime = System.nanoTime();
+        AtomicInteger parsedFiles = new AtomicInteger();
+        AtomicLong parsedBytes = new AtomicLong();
         Map<Path, Future<PackageMetadata>> futures = new LinkedHashMap<>();
 
         for ( String pathString : metadataLocations )
@@ -75,20 +193,19 @@ class MetadataReader
 
             if ( Files.isDirectory( path ) )
             {
-                String flist[] = path.toFile().list();
+                String flist[] = listDirectory( path, index );
                 if ( flist != null )
                 {
-                    Arrays.sort( flist );
                     for ( String fragFilename : flist )
                     {
                         Path xmlPath = path.resolve( fragFilename );
-                        futures.put( xmlPath, executor.submit( ( ) -> readMetadata( xmlPath ) ) );
+                        futures.put( xmlPath, submitReadMetadata( xmlPath, index, parsedFiles, parsedBytes ) );
                     }
                 }
             }
             else
             {
-                futures.put( path, executor.submit( ( ) -> readMetadata( path ) ) );
+                futures.put( path, submitReadMetadata( path, index, parsedFiles, parsedBytes ) );
             }
         }
 
@@ -121,6 +238,17 @@ class MetadataReader
                 }
             }
 
+            if ( index != null )
+                index.store();
+
+            if ( logger.isDebugEnabled() )
+            {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime );
+                long filesPerSecond = parsedFiles.get() * 1000L / Math.max( elapsedMillis, 1 );
+                logger.debug( "Read {} metadata files in {} ms, {} of them were parsed ({} bytes, {} files/s)",
+                              futures.size(), elapsedMillis, parsedFiles.get(), parsedBytes.get(), filesPerSecond );
+            }
+
             return result;
         }
         catch ( InterruptedException e )
@@ -130,6 +258,83 @@ class MetadataReader
         }
     }
 
+    private static BasicFileAttributes readAttributes( Path path )
+    {
+        try
+        {
+            return Files.readAttributes( path, BasicFileAttributes.class );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+    }
+
+    private String[] listDirectory( Path path, MetadataIndex index )
+    {
+        BasicFileAttributes attributes = index != null ? readAttributes( path ) : null;
+
+        if ( attributes != null )
+        {
+            String[] flist = index.lookupDirectory( path, attributes );
+            if ( flist != null )
+                return flist;
+        }
+
+        String flist[] = path.toFile().list();
+        if ( flist != null )
+        {
+            Arrays.sort( flist );
+            if ( attributes != null )
+                index.updateDirectory( path, attributes, flist );
+        }
+
+        return flist;
+    }
+
+    private static <T> Future<T> submit( Callable<T> task )
+    {
+        // Shared executor is looked up for every task, as it can be shut down and replaced at any time
+        for ( ;; )
+        {
+            ExecutorService executor = getSharedExecutor();
+            try
+            {
+                return executor.submit( task );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // Executor was shut down concurrently, try again with a new one
+                if ( !executor.isShutdown() )
+                    throw e;
+            }
+        }
+    }
+
+    private Future<PackageMetadata> submitReadMetadata( Path path, MetadataIndex index, AtomicInteger parsedFiles,
+                                                        AtomicLong parsedBytes )
+    {
+        BasicFileAttributes attributes = index != null ? readAttributes( path ) : null;
+
+        if ( attributes != null )
+        {
+            PackageMetadata indexedMetadata = index.lookupFragment( path, attributes );
+            if ( indexedMetadata != null )
+                return CompletableFuture.completedFuture( indexedMetadata );
+        }
+
+        return submit( ( ) -> {
+            PackageMetadata metadata = readMetadata( path );
+            parsedFiles.incrementAndGet();
+            parsedBytes.addAndGet( attributes != null ? attributes.size() : Files.size( path ) );
+
+            if ( attributes != null )
+                index.updateFragment( path, attributes, metadata );
+
+            return metadata;
+        } );
+    }
+
     private static PackageMetadata readMetadata( Path path )
         throws Exception
     {
@@ -16,7 +16,7 @@
 package org.fedoraproject.xmvn.resolver.impl;
 
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -38,39 +38,103 @@ public class MetadataResolver
 {
     private final Logger logger = LoggerFactory.getLogger( MetadataResolver.class );
 
-    private final Map<Artifact, ArtifactMetadata> artifactMap = new LinkedHashMap<>();
-
     private final List<String> metadataLocations;
 
-    boolean initialized;
+    private final Object lock = new Object();
+
+    /**
+     * Immutable snapshot of artifact mappings, or {@code null} if mappings were not initialized yet. The snapshot is
+     * read without locking and replaced atomically when mappings are invalidated.
+     */
+    private volatile Snapshot snapshot;
+
+    private MetadataIndex index;
+
+    private static class Snapshot
+    {
+        final Map<Artifact, ArtifactMetadata> artifactMap;
+
+        final String generation;
+
+        public Snapshot( Map<Artifact, ArtifactMetadata> artifactMap, String generation )
+        {
+            this.artifactMap = artifactMap;
+            this.generation = generation;
+        }
+    }
 
     public MetadataResolver( List<String> metadataLocations )
     {
         this.metadataLocations = metadataLocations;
     }
 
-    private synchronized void initArtifactMap()
+    /**
+     * Set maximal number of threads used for reading metadata. Metadata files are read by an executor shared by all
+     * metadata resolvers, so this setting affects all of them.
+     * 
+     * @param threadCount number of threads, or 0 to use default number of threads
+     */
+    public static void setReaderThreadCount( int threadCount )
+    {
+        MetadataReader.setThreadCount( threadCount );
+    }
+
+    /**
+     * Shut down executor used for reading metadata. Metadata resolvers can still be used after shutdown, but a new
+     * executor will have to be created.
+     */
+    public static void shutdownReaders()
+    {
+        MetadataReader.shutdown();
+    }
+
+    private Snapshot getSnapshot()
     {
-        if ( initialized )
-            return;
-        initialized = true;
+        Snapshot currentSnapshot = snapshot;
+        if ( currentSnapshot != null )
+            return currentSnapshot;
 
+        synchronized ( lock )
+        {
+            if ( snapshot == null )
+                snapshot = buildSnapshot();
+
+            return snapshot;
+        }
+    }
+
+    private Snapshot buildSnapshot()
+    {
+        if ( index == null )
+        {
+            if ( Boolean.getBoolean( "xmvn.resolver.disableMetadataIndex" ) )
+                index = new MetadataIndex();
+            else
+                index = new MetadataIndex( CacheManager.getCacheHome(), metadataLocations );
+        }
+
+        // Metadata index retains metadata read previously, so after invalidation only new or changed metadata
+        // fragments are read again. Artifact map is rebuilt from scratch in the original order, so that handling of
+        // duplicate metadata doesn't depend on which fragments were re-read.
         MetadataReader reader = new MetadataReader();
-        List<PackageMetadata> metadataList = reader.readMetadata( metadataLocations );
+        List<PackageMetadata> metadataList = reader.readMetadata( metadataLocations, index );
 
+        Map<Artifact, ArtifactMetadata> map = new HashMap<>();
         PathInterpolator interpolator = new PathInterpolator();
 
         for ( PackageMetadata metadata : metadataList )
         {
             for ( ArtifactMetadata installedArtifact : metadata.getArtifacts() )
             {
-                processArtifactMetadata( installedArtifact );
+                processArtifactMetadata( map, installedArtifact );
                 interpolator.interpolate( installedArtifact );
             }
         }
+
+        return new Snapshot( Collections.unmodifiableMap( map ), index.getGeneration() );
     }
 
-    private void processArtifactMetadata( ArtifactMetadata metadata )
+    private void processArtifactMetadata( Map<Artifact, ArtifactMetadata> artifactMap, ArtifactMetadata metadata )
     {
         Artifact baseArtifact = metadata.toArtifact();
 
@@ -123,13 +187,30 @@ public class MetadataResolver
 
     public ArtifactMetadata resolveArtifactMetadata( Artifact artifact )
     {
-        initArtifactMap();
-        return artifactMap.get( artifact );
+        return getSnapshot().artifactMap.get( artifact );
     }
 
-    public synchronized void invalidateMappings()
+    /**
+     * Get generation of metadata used by this resolver. Generation changes whenever metadata is added, removed or
+     * modified and mappings are re-initialized.
+     * 
+     * @return metadata generation
+     */
+    public String getGeneration()
     {
-        initialized = false;
-        artifactMap.clear();
+        return getSnapshot().generation;
+    }
+
+    /**
+     * Re-read metadata and atomically replace artifact mappings. Lookups running concurrently with invalidation keep
+     * using previous mappings until the new ones are ready.
+     */
+    public void invalidateMappings()
+    {
+        synchronized ( lock )
+        {
+            if ( snapshot != null )
+                snapshot = buildSnapshot();
+        }
     }
 }
@@ -52,7 +52,9 @@ class PathInterpolator
     {
         String path = metadata.getPath();
 
-        if ( path != null )
+        // Metadata may be interpolated more than once, but it must be modified only when it contains variables, as it
+        // may be concurrently read by other threads
+        if ( path != null && path.contains( "${JAVA_HOME}" ) )
         {
             path = path.replaceAll( "\\$\\{JAVA_HOME\\}", javaHomeDir.toString() );
 
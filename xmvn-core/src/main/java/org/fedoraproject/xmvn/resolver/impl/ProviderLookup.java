@@ -0,0 +1,51 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Service for looking up system packages which provide (own) given files.
+ * 
+ * @author Mikolaj Izdebski
+ */
+interface ProviderLookup
+{
+    /**
+     * Look up providers of given files.
+     * 
+     * @param paths paths to files for which providers should be looked up
+     * @return map from file path to provider, in format {@code name (version)}; files which are not provided by any
+     *         package are mapped to {@code null}, files whose providers could not be looked up are not included in the
+     *         map
+     */
+    Map<Path, String> lookupProviders( Collection<Path> paths );
+
+    /**
+     * Look up provider of a single file.
+     * 
+     * @param path path to file
+     * @return name and version of package providing given file, or {@code null} if the file is not provided by any
+     *         package
+     */
+    default String lookupProvider( Path path )
+    {
+        return lookupProviders( Collections.singleton( path ) ).get( path );
+    }
+}
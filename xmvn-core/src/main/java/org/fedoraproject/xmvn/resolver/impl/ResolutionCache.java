@@ -0,0 +1,186 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of successful resolution results, shared by all XMvn processes using the same metadata.
+ * <p>
+ * Cached results are valid only for a single generation of system metadata. Whenever metadata generation changes all
+ * cached results are discarded. New results are kept in memory and merged into the on-disk cache when JVM exits.
+ *
+ * @author Mikolaj Izdebski
+ */
+class ResolutionCache
+{
+    private static final String GENERATION_KEY = "xmvn.resolver.generation";
+
+    private final Logger logger = LoggerFactory.getLogger( ResolutionCache.class );
+
+    private final Path cacheFile;
+
+    private String generation;
+
+    private Properties entries;
+
+    private final Properties newEntries = new Properties();
+
+    private boolean shutdownHookAdded;
+
+    public ResolutionCache( Path cacheFile )
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    private Properties readCacheFile()
+    {
+        Properties properties = new Properties();
+
+        if ( Files.isRegularFile( cacheFile ) )
+        {
+            try (InputStream is = Files.newInputStream( cacheFile ))
+            {
+                properties.load( is );
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Unable to read resolution cache {}", cacheFile, e );
+                properties.clear();
+            }
+        }
+
+        return properties;
+    }
+
+    private void selectGeneration( String currentGeneration )
+    {
+        if ( currentGeneration.equals( generation ) )
+            return;
+
+        generation = currentGeneration;
+        newEntries.clear();
+        entries = readCacheFile();
+
+        if ( !generation.equals( entries.getProperty( GENERATION_KEY ) ) )
+            entries.clear();
+    }
+
+    /**
+     * Get cached resolution result.
+     *
+     * @param currentGeneration current metadata generation
+     * @param key resolution request key
+     * @return cached result, or {@code null} if there is no valid cached result for given key
+     */
+    public synchronized DefaultResolutionResult get( String currentGeneration, String key )
+    {
+        selectGeneration( currentGeneration );
+
+        String value = newEntries.getProperty( key, entries.getProperty( key ) );
+        if ( value == null )
+            return null;
+
+        String[] fields = value.split( "\t", -1 );
+        if ( fields.length != 3 )
+            return null;
+
+        Path artifactPath = Paths.get( fields[0] );
+        if ( !Files.exists( artifactPath ) )
+            return null;
+
+        DefaultResolutionResult result = new DefaultResolutionResult( artifactPath, fields[1] );
+        result.setCompatVersion( fields[2].isEmpty() ? null : fields[2] );
+        return result;
+    }
+
+    /**
+     * Add resolution result to the cache.
+     *
+     * @param currentGeneration metadata generation from which the result was resolved
+     * @param key resolution request key
+     * @param artifactPath path to resolved artifact
+     * @param namespace namespace of resolved artifact
+     * @param compatVersion compat version of resolved artifact
+     */
+    public synchronized void put( String currentGeneration, String key, Path artifactPath, String namespace,
+                                  String compatVersion )
+    {
+        selectGeneration( currentGeneration );
+
+        String value = artifactPath + "\t" + ( namespace != null ? namespace : "" ) + "\t"
+            + ( compatVersion != null ? compatVersion : "" );
+        newEntries.setProperty( key, value );
+
+        if ( !shutdownHookAdded )
+        {
+            Runtime.getRuntime().addShutdownHook( new Thread( this::store ) );
+            shutdownHookAdded = true;
+        }
+    }
+
+    /**
+     * Merge new cache entries into on-disk cache.
+     */
+    synchronized void store()
+    {
+        if ( newEntries.isEmpty() )
+            return;
+
+        Path tempFile = null;
+        try
+        {
+            // Merge with entries added by other processes since the cache was read
+            Properties properties = readCacheFile();
+            if ( !generation.equals( properties.getProperty( GENERATION_KEY ) ) )
+                properties.clear();
+            properties.putAll( newEntries );
+            properties.setProperty( GENERATION_KEY, generation );
+
+            Files.createDirectories( cacheFile.getParent() );
+            tempFile = Files.createTempFile( cacheFile.getParent(), "resolutions-", ".tmp" );
+            try (OutputStream os = Files.newOutputStream( tempFile ))
+            {
+                properties.store( os, "XMvn resolution cache" );
+            }
+
+            Files.move( tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Unable to write resolution cache {}", cacheFile, e );
+            try
+            {
+                if ( tempFile != null )
+                    Files.deleteIfExists( tempFile );
+            }
+            catch ( IOException e1 )
+            {
+                // Ignore
+            }
+        }
+    }
+}
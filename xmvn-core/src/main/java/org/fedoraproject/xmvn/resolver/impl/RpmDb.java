@@ -1,5 +1,5 @@
 /*-
- * Copyright (c) 2012-2015 Red Hat, Inc.
+ * Copyright (c) 2012-2016 Red Hat, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,26 +20,52 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * Looks up providers of files in RPM database.
+ * <p>
+ * Providers of all requested files are looked up with a single {@code rpm -qf} query (or a few queries, if the number
+ * of files is very large), which lists files owned by packages owning requested files.
+ *
  * @author Mikolaj Izdebski
  */
 class RpmDb
+    implements ProviderLookup
 {
-    private static Map<String, String> paths;
+    private static final String RPM = "/bin/rpm";
+
+    private static final String QUERY_FORMAT = "[%{FILENAMES}|%{NAME} (%{VERSION})\\n]";
+
+    private static final String[] DATABASE_LOCATIONS = { "/var/lib/rpm", "/usr/lib/sysimage/rpm" };
+
+    private static final int BATCH_SIZE = 1000;
 
-    private static final Object lock = new Object();
+    private final Logger logger = LoggerFactory.getLogger( RpmDb.class );
 
-    private static Iterable<String> execQuery( String query )
+    private static List<String> execQuery( List<String> paths )
         throws IOException
     {
-        String[] cmdLine = new String[] { "/bin/rpm", "-qa", "--qf", query };
+        List<String> cmdLine = new ArrayList<>();
+        cmdLine.add( RPM );
+        cmdLine.add( "-qf" );
+        cmdLine.add( "--qf" );
+        cmdLine.add( QUERY_FORMAT );
+        cmdLine.add( "--" );
+        cmdLine.addAll( paths );
 
         ProcessBuilder builder = new ProcessBuilder( cmdLine );
         builder.redirectError( new File( "/dev/null" ) );
@@ -47,7 +73,7 @@ class RpmDb
         child.getOutputStream().close();
 
         Reader reader = new InputStreamReader( child.getInputStream() );
-        Collection<String> lines = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
         try (BufferedReader bufferedReader = new BufferedReader( reader ))
         {
             String line;
@@ -55,65 +81,120 @@ class RpmDb
                 lines.add( line );
         }
 
-        int exitStatus;
         try
         {
-            exitStatus = child.waitFor();
+            // Exit status of rpm -qf is the number of files which are not owned by any package, so it can't be used
+            // to detect failures.
+            child.waitFor();
         }
         catch ( InterruptedException e )
         {
             throw new IOException( e );
         }
-        if ( exitStatus != 0 )
-            throw new IOException( "rpm failed with exit status " + exitStatus );
 
         return lines;
     }
 
-    private static void buildDatabase()
+    @Override
+    public Map<Path, String> lookupProviders( Collection<Path> paths )
     {
-        paths = new TreeMap<>();
-
-        try
+        Map<String, List<Path>> realPaths = new LinkedHashMap<>();
+        for ( Path path : paths )
         {
-            String query = "[%{NAME} (%{VERSION})|%{FILENAMES}\n]";
-            Iterable<String> rows;
-            rows = execQuery( query );
-
-            for ( String row : rows )
+            Path realPath = path;
+            try
+            {
+                realPath = path.toRealPath();
+            }
+            catch ( IOException e )
             {
-                int splitPoint = row.indexOf( '|' );
-                String name = row.substring( 0, splitPoint );
-                String path = row.substring( splitPoint + 1 );
-                paths.put( path, name );
+                // Ignore
             }
+
+            realPaths.computeIfAbsent( realPath.toString(), x -> new ArrayList<>() ).add( path );
         }
-        catch ( IOException e )
+
+        Map<Path, String> providers = new HashMap<>();
+        List<String> batch = new ArrayList<>();
+
+        for ( Entry<String, List<Path>> entry : realPaths.entrySet() )
         {
+            batch.add( entry.getKey() );
+            if ( batch.size() == BATCH_SIZE )
+            {
+                lookupBatch( batch, realPaths, providers );
+                batch.clear();
+            }
         }
-    }
 
-    public String lookupPath( String path )
-    {
-        return lookupPath( Paths.get( path ) );
+        if ( !batch.isEmpty() )
+            lookupBatch( batch, realPaths, providers );
+
+        return providers;
     }
 
-    public String lookupPath( Path path )
+    private void lookupBatch( List<String> batch, Map<String, List<Path>> realPaths, Map<Path, String> providers )
     {
         try
         {
-            path = path.toRealPath();
+            logger.debug( "Looking up providers of {} files in RPM database", batch.size() );
+
+            for ( String row : execQuery( batch ) )
+            {
+                int splitPoint = row.lastIndexOf( '|' );
+                if ( splitPoint < 0 )
+                    continue;
+
+                List<Path> requestedPaths = realPaths.get( row.substring( 0, splitPoint ) );
+                if ( requestedPaths != null )
+                {
+                    String name = row.substring( splitPoint + 1 );
+                    for ( Path path : requestedPaths )
+                        providers.put( path, name );
+                }
+            }
+
+            // Files not listed in query output are not owned by any package
+            for ( String realPath : batch )
+            {
+                for ( Path path : realPaths.get( realPath ) )
+                    providers.putIfAbsent( path, null );
+            }
         }
         catch ( IOException e )
         {
-            // Ignore
+            // Files from failed batch are left out, so that failure is not mistaken for lack of provider
+            logger.debug( "Failed to query RPM database", e );
         }
+    }
 
-        synchronized ( lock )
+    /**
+     * Get a string which changes whenever contents of RPM database changes.
+     *
+     * @return RPM database stamp, or {@code null} if RPM database could not be found
+     */
+    public static String getDatabaseStamp()
+    {
+        for ( String location : DATABASE_LOCATIONS )
         {
-            if ( paths == null )
-                buildDatabase();
-            return paths.get( path.toString() );
+            Path dbDir = Paths.get( location );
+            if ( !Files.isDirectory( dbDir ) )
+                continue;
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream( dbDir ))
+            {
+                long mtime = Files.getLastModifiedTime( dbDir ).toMillis();
+                for ( Path dbFile : stream )
+                    mtime = Math.max( mtime, Files.getLastModifiedTime( dbFile ).toMillis() );
+
+                return location + ":" + mtime;
+            }
+            catch ( IOException e )
+            {
+                return null;
+            }
         }
+
+        return null;
     }
 }
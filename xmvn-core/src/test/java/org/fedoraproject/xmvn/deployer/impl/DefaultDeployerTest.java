@@ -0,0 +1,186 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.deployer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fedoraproject.xmvn.artifact.Artifact;
+import org.fedoraproject.xmvn.artifact.DefaultArtifact;
+import org.fedoraproject.xmvn.deployer.Deployer;
+import org.fedoraproject.xmvn.deployer.DeploymentRequest;
+import org.fedoraproject.xmvn.deployer.DeploymentResult;
+import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
+import org.fedoraproject.xmvn.metadata.PackageMetadata;
+import org.fedoraproject.xmvn.metadata.io.stax.MetadataStaxReader;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class DefaultDeployerTest
+{
+    private Path planPath;
+
+    private Path artifactPath;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory( "xmvn-test" );
+        planPath = dir.resolve( ".xmvn-reactor" );
+        artifactPath = Files.createFile( dir.resolve( "foo.jar" ) );
+    }
+
+    private void deploy( Deployer deployer, String artifactId )
+        throws Exception
+    {
+        Artifact artifact = new DefaultArtifact( "org.example", artifactId, "1.2.3" ).setPath( artifactPath );
+        DeploymentRequest request = new DeploymentRequest();
+        request.setArtifact( artifact );
+        request.setPlanPath( planPath );
+        request.addProperty( "foo", "bar" );
+        request.addDependency( new DefaultArtifact( "org.example", "dep", "4.5" ) );
+
+        DeploymentResult result = deployer.deploy( request );
+        if ( result.getException() != null )
+            throw result.getException();
+    }
+
+    private List<String> readPlan()
+        throws Exception
+    {
+        PackageMetadata plan;
+        try (Reader reader = Files.newBufferedReader( planPath, StandardCharsets.UTF_8 ))
+        {
+            plan = new MetadataStaxReader().read( reader );
+        }
+
+        List<String> artifactIds = new ArrayList<>();
+        for ( ArtifactMetadata am : plan.getArtifacts() )
+        {
+            assertEquals( "org.example", am.getGroupId() );
+            assertEquals( artifactPath.toString(), am.getPath() );
+            assertEquals( "bar", am.getProperties().getProperty( "foo" ) );
+            assertEquals( 1, am.getDependencies().size() );
+            artifactIds.add( am.getArtifactId() );
+        }
+
+        return artifactIds;
+    }
+
+    /**
+     * Test if artifacts are appended to installation plan in deployment order.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAppendToPlan()
+        throws Exception
+    {
+        Deployer deployer = new DefaultDeployer();
+        deploy( deployer, "a1" );
+        deploy( deployer, "a2" );
+        deploy( deployer, "a3" );
+
+        List<String> expected = new ArrayList<>();
+        expected.add( "a1" );
+        expected.add( "a2" );
+        expected.add( "a3" );
+        assertEquals( expected, readPlan() );
+    }
+
+    /**
+     * Test if plans that weren't written by deployer are rewritten in canonical form.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testNonCanonicalPlan()
+        throws Exception
+    {
+        Files.write( planPath, "<metadata/>\n<!-- Comment -->\n".getBytes( StandardCharsets.US_ASCII ) );
+
+        Deployer deployer = new DefaultDeployer();
+        deploy( deployer, "a1" );
+        deploy( deployer, "a2" );
+
+        List<String> expected = new ArrayList<>();
+        expected.add( "a1" );
+        expected.add( "a2" );
+        assertEquals( expected, readPlan() );
+    }
+
+    /**
+     * Test if no artifacts are lost when they are deployed concurrently.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentDeployment()
+        throws Exception
+    {
+        int threadCount = 8;
+        int artifactCount = 25;
+
+        ExecutorService executor = Executors.newFixedThreadPool( threadCount );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>();
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                // Each thread uses its own deployer, like independent build tools do
+                String prefix = "t" + i + "-";
+                Deployer deployer = new DefaultDeployer();
+                Callable<Void> task = ( ) ->
+                {
+                    for ( int j = 0; j < artifactCount; j++ )
+                        deploy( deployer, prefix + j );
+                    return null;
+                };
+                futures.add( executor.submit( task ) );
+            }
+
+            for ( Future<Void> future : futures )
+                assertNull( future.get() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        List<String> artifactIds = readPlan();
+        Set<String> uniqueIds = new HashSet<>( artifactIds );
+        assertEquals( threadCount * artifactCount, artifactIds.size() );
+        assertEquals( threadCount * artifactCount, uniqueIds.size() );
+    }
+}
@@ -15,8 +15,16 @@
  */
 package org.fedoraproject.xmvn.resolver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.eclipse.sisu.launch.InjectedTest;
 import org.junit.Test;
@@ -80,4 +88,37 @@ public class BasicResolverTest
         assertNotNull( result );
         assertNull( result.getArtifactPath() );
     }
+
+    /**
+     * Test if batch resolution generates effective POMs and returns results in the same order as requests.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testResolveAllEffectivePoms()
+        throws Exception
+    {
+        Configurator configurator = lookup( Configurator.class );
+        ResolverSettings settings = configurator.getConfiguration().getResolverSettings();
+        settings.addMetadataRepository( "src/test/resources/effective-pom-metadata" );
+
+        Resolver resolver = lookup( Resolver.class );
+        List<ResolutionRequest> requests = new ArrayList<>();
+        for ( String artifactId : new String[] { "gamma", "nonexistent", "alpha", "beta" } )
+            requests.add( new ResolutionRequest( new DefaultArtifact( "org.example", artifactId, "pom", "SYSTEM" ) ) );
+
+        List<ResolutionResult> results = resolver.resolveAll( requests );
+        assertEquals( 4, results.size() );
+        assertNull( results.get( 1 ).getArtifactPath() );
+
+        for ( int i : new int[] { 0, 2, 3 } )
+        {
+            Path pom = results.get( i ).getArtifactPath();
+            assertNotNull( pom );
+            assertTrue( Files.isRegularFile( pom ) );
+            String content = new String( Files.readAllBytes( pom ), StandardCharsets.UTF_8 );
+            assertTrue( content.contains( "<artifactId>" + requests.get( i ).getArtifact().getArtifactId()
+                + "</artifactId>" ) );
+        }
+    }
 }
@@ -15,12 +15,15 @@
  */
 package org.fedoraproject.xmvn.resolver;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 
 import org.eclipse.sisu.launch.InjectedTest;
 import org.junit.Test;
@@ -63,4 +66,33 @@ public class JavaHomeResolverTest
         ResolutionResult xpp3Result = javaHomeResolver.resolve( xpp3Request );
         assertNull( xpp3Result.getArtifactPath() );
     }
+
+    /**
+     * Test if batch resolution returns results in the same order as requests.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testJavaHomeResolveAll()
+        throws Exception
+    {
+        Configurator configurator = lookup( Configurator.class );
+        ResolverSettings settings = configurator.getConfiguration().getResolverSettings();
+        settings.addPrefix( new File( "." ).getAbsolutePath() );
+        settings.addMetadataRepository( "src/test/resources/java-home-resolver-metadata" );
+
+        Resolver javaHomeResolver = lookup( Resolver.class );
+
+        ResolutionRequest xpp3Request = new ResolutionRequest( new DefaultArtifact( "xpp3", "xpp3", "jar", "SYSTEM" ) );
+        ResolutionRequest comSunToolsRequest =
+            new ResolutionRequest( new DefaultArtifact( "com.sun", "tools", "jar", "SYSTEM" ) );
+        List<ResolutionResult> results =
+            javaHomeResolver.resolveAll( Arrays.asList( xpp3Request, comSunToolsRequest, xpp3Request ) );
+
+        assertEquals( 3, results.size() );
+        assertNull( results.get( 0 ).getArtifactPath() );
+        assertNotNull( results.get( 1 ).getArtifactPath() );
+        assertTrue( Files.exists( results.get( 1 ).getArtifactPath() ) );
+        assertNull( results.get( 2 ).getArtifactPath() );
+    }
 }
@@ -0,0 +1,259 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class CacheManagerTest
+{
+    private Path cacheDir;
+
+    private Path workDir;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        cacheDir = Files.createTempDirectory( "xmvn-test" );
+        workDir = Files.createTempDirectory( "xmvn-test" );
+    }
+
+    private Path createFile( String name, int size, int seed )
+        throws Exception
+    {
+        byte[] content = new byte[size];
+        for ( int i = 0; i < size; i++ )
+            content[i] = (byte) ( i * 31 + seed );
+
+        return Files.write( workDir.resolve( name ), content );
+    }
+
+    /**
+     * Test if files are stored under their content hash and identical content is stored only once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testContentAddressing()
+        throws Exception
+    {
+        CacheManager cacheManager = new CacheManager( cacheDir, Long.MAX_VALUE );
+
+        // File larger than hashing buffer
+        Path file = createFile( "foo.pom", 200000, 1 );
+        Path cachedFile = cacheManager.cacheFile( file );
+        assertTrue( cacheManager.isCached( cachedFile ) );
+        assertFalse( cacheManager.isCached( file ) );
+        assertEquals( "foo.pom", cachedFile.getFileName().toString() );
+        assertArrayEquals( Files.readAllBytes( file ), Files.readAllBytes( cachedFile ) );
+
+        // Hash computed from file must be the same as hash computed from content in memory
+        assertEquals( cachedFile, cacheManager.cacheContent( "foo.pom", Files.readAllBytes( file ) ) );
+        assertEquals( cachedFile, cacheManager.cacheFile( file ) );
+
+        Path otherFile = cacheManager.cacheContent( "foo.pom", "other".getBytes( StandardCharsets.UTF_8 ) );
+        assertNotEquals( cachedFile, otherFile );
+
+        assertEquals( "DA39A3EE5E6B4B0D3255BFEF95601890AFD80709",
+                      cacheManager.cacheContent( "empty", new byte[0] ).getParent().getFileName().toString() );
+    }
+
+    /**
+     * Test if files can be cached concurrently from many threads.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentCaching()
+        throws Exception
+    {
+        CacheManager cacheManager = new CacheManager( cacheDir, Long.MAX_VALUE );
+
+        List<Path> files = new ArrayList<>();
+        for ( int i = 0; i < 4; i++ )
+            files.add( createFile( "file" + i, 100000, i ) );
+
+        List<Callable<Path>> tasks = new ArrayList<>();
+        for ( int i = 0; i < 64; i++ )
+        {
+            Path file = files.get( i % files.size() );
+            tasks.add( ( ) -> cacheManager.cacheFile( file ) );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            Set<Path> cachedFiles = new HashSet<>();
+            for ( Future<Path> future : executor.invokeAll( tasks ) )
+                cachedFiles.add( future.get() );
+
+            assertEquals( files.size(), cachedFiles.size() );
+            for ( Path file : files )
+                assertArrayEquals( Files.readAllBytes( file ),
+                                   Files.readAllBytes( cacheManager.cacheFile( file ) ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test if least recently used entries are evicted when cache size limit is exceeded.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEviction()
+        throws Exception
+    {
+        CacheManager cacheManager = new CacheManager( cacheDir, 1500 );
+
+        Path oldest = cacheManager.cacheFile( createFile( "a", 1000, 1 ) );
+        Path reused = cacheManager.cacheFile( createFile( "b", 1000, 2 ) );
+        Path newest = cacheManager.cacheFile( createFile( "c", 1000, 3 ) );
+        Files.setLastModifiedTime( oldest, FileTime.fromMillis( 1000000 ) );
+        Files.setLastModifiedTime( reused, FileTime.fromMillis( 2000000 ) );
+        Files.setLastModifiedTime( newest, FileTime.fromMillis( 3000000 ) );
+
+        // Reusing entry marks it as recently used
+        cacheManager.cacheFile( createFile( "b", 1000, 2 ) );
+
+        Path otherFile = Files.write( cacheDir.resolve( "providers.properties" ), new byte[10000] );
+
+        cacheManager.evict();
+
+        assertFalse( Files.exists( oldest ) );
+        assertFalse( Files.exists( oldest.getParent() ) );
+        assertTrue( Files.exists( reused ) );
+        assertFalse( Files.exists( newest ) );
+        assertTrue( Files.exists( otherFile ) );
+
+        cacheManager.evict();
+        assertTrue( Files.exists( reused ) );
+    }
+
+    /**
+     * Test if entries used within grace period are not evicted, even if cache size limit is exceeded.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGracePeriod()
+        throws Exception
+    {
+        CacheManager cacheManager = new CacheManager( cacheDir, 1500 );
+
+        Path old = cacheManager.cacheFile( createFile( "a", 1000, 1 ) );
+        Path recent = cacheManager.cacheFile( createFile( "b", 1000, 2 ) );
+        Path newest = cacheManager.cacheFile( createFile( "c", 1000, 3 ) );
+        Files.setLastModifiedTime( old, FileTime.fromMillis( 1000000 ) );
+
+        assertEquals( 2000, cacheManager.evict() );
+        assertFalse( Files.exists( old ) );
+        assertTrue( Files.exists( recent ) );
+        assertTrue( Files.exists( newest ) );
+    }
+
+    /**
+     * Test if empty entries, which may be just being populated by another process, are not evicted within grace period.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEmptyEntryGracePeriod()
+        throws Exception
+    {
+        CacheManager cacheManager = new CacheManager( cacheDir, 1500 );
+
+        String hash = "0123456789012345678901234567890123456789";
+        Path emptyEntry = Files.createDirectories( cacheDir.resolve( hash.substring( 0, 2 ) ).resolve( hash ) );
+        Path old = cacheManager.cacheFile( createFile( "a", 1000, 1 ) );
+        Path newest = cacheManager.cacheFile( createFile( "b", 1000, 2 ) );
+        Files.setLastModifiedTime( old, FileTime.fromMillis( 1000000 ) );
+
+        assertEquals( 1000, cacheManager.evict() );
+        assertTrue( Files.isDirectory( emptyEntry ) );
+        assertFalse( Files.exists( old ) );
+        assertTrue( Files.exists( newest ) );
+    }
+
+    private Path createForeignEntry( String hash )
+        throws Exception
+    {
+        Path entryDir = Files.createDirectories( cacheDir.resolve( hash.substring( 0, 2 ) ).resolve( hash ) );
+        Path file = Files.write( entryDir.resolve( "foreign" ), new byte[10000] );
+        Files.setLastModifiedTime( file, FileTime.fromMillis( 1000000 ) );
+        return file;
+    }
+
+    /**
+     * Test if cache directory is scanned only when estimated cache size exceeds size limit, at most once per grace
+     * period.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSizeEstimate()
+        throws Exception
+    {
+        // Entry which was not stored by cache manager is not included in size estimate
+        Path foreign = createForeignEntry( "0123456789012345678901234567890123456789" );
+
+        CacheManager cacheManager = new CacheManager( cacheDir, 1500 );
+        Path first = cacheManager.cacheFile( createFile( "a", 1000, 1 ) );
+        cacheManager.evictIfNeeded();
+        assertTrue( Files.exists( foreign ) );
+
+        // Size of entries stored by other process is added to the estimate, which now exceeds size limit
+        CacheManager otherManager = new CacheManager( cacheDir, 1500 );
+        Path second = otherManager.cacheFile( createFile( "b", 1000, 2 ) );
+        otherManager.evictIfNeeded();
+        assertFalse( Files.exists( foreign ) );
+        assertTrue( Files.exists( first ) );
+        assertTrue( Files.exists( second ) );
+
+        // Cache was scanned recently, so it is not scanned again
+        Path otherForeign = createForeignEntry( "abcdefabcdefabcdefabcdefabcdefabcdefabcd" );
+        CacheManager thirdManager = new CacheManager( cacheDir, 1500 );
+        thirdManager.cacheFile( createFile( "c", 1000, 3 ) );
+        thirdManager.evictIfNeeded();
+        assertTrue( Files.exists( otherForeign ) );
+    }
+}
@@ -0,0 +1,123 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class CachingProviderLookupTest
+{
+    private final Path foo = Paths.get( "/usr/share/java/foo.jar" );
+
+    private final Path bar = Paths.get( "/usr/share/java/bar.jar" );
+
+    private final Path baz = Paths.get( "/usr/share/java/baz.jar" );
+
+    private StubProviderLookup backend;
+
+    private Path cacheFile;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        backend = new StubProviderLookup();
+        backend.addProvider( foo, "foo (1.0)" );
+        backend.addProvider( bar, "bar (2.0)" );
+        cacheFile = Files.createTempDirectory( "xmvn-test" ).resolve( "providers.properties" );
+    }
+
+    /**
+     * Test if providers of prefetched paths are looked up in a single batch.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBatchLookup()
+        throws Exception
+    {
+        CachingProviderLookup lookup = new CachingProviderLookup( backend, null, ( ) -> null );
+        lookup.prefetch( foo );
+        lookup.prefetch( bar );
+        lookup.prefetch( baz );
+
+        assertEquals( "bar (2.0)", lookup.lookupProvider( bar ) );
+        assertEquals( "foo (1.0)", lookup.lookupProvider( foo ) );
+        assertNull( lookup.lookupProvider( baz ) );
+
+        assertEquals( 1, backend.getBatches().size() );
+        assertEquals( Arrays.asList( foo, bar, baz ), backend.getBatches().get( 0 ) );
+    }
+
+    /**
+     * Test if persistent cache is used as long as database stamp doesn't change.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPersistentCache()
+        throws Exception
+    {
+        new CachingProviderLookup( backend, cacheFile, ( ) -> "stamp1" ).lookupProviders( Arrays.asList( foo, baz ) );
+        assertTrue( Files.isRegularFile( cacheFile ) );
+        assertEquals( 1, backend.getBatches().size() );
+
+        CachingProviderLookup lookup = new CachingProviderLookup( backend, cacheFile, ( ) -> "stamp1" );
+        assertEquals( "foo (1.0)", lookup.lookupProvider( foo ) );
+        assertNull( lookup.lookupProvider( baz ) );
+        assertEquals( 1, backend.getBatches().size() );
+
+        lookup = new CachingProviderLookup( backend, cacheFile, ( ) -> "stamp2" );
+        assertEquals( "foo (1.0)", lookup.lookupProvider( foo ) );
+        assertEquals( 2, backend.getBatches().size() );
+    }
+
+    /**
+     * Test if failed lookups are not cached as lack of provider.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFailedLookup()
+        throws Exception
+    {
+        backend.setFailing( true );
+        CachingProviderLookup lookup = new CachingProviderLookup( backend, cacheFile, ( ) -> "stamp1" );
+        assertNull( lookup.lookupProvider( foo ) );
+        assertFalse( Files.exists( cacheFile ) );
+
+        backend.setFailing( false );
+        assertEquals( "foo (1.0)", lookup.lookupProvider( foo ) );
+        assertEquals( 2, backend.getBatches().size() );
+
+        lookup = new CachingProviderLookup( backend, cacheFile, ( ) -> "stamp1" );
+        assertEquals( "foo (1.0)", lookup.lookupProvider( foo ) );
+        assertEquals( 2, backend.getBatches().size() );
+    }
+}
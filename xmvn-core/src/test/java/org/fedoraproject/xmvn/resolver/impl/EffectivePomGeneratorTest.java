@@ -0,0 +1,267 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.fedoraproject.xmvn.artifact.Artifact;
+import org.fedoraproject.xmvn.artifact.DefaultArtifact;
+import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
+import org.fedoraproject.xmvn.metadata.Dependency;
+import org.fedoraproject.xmvn.metadata.DependencyExclusion;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class EffectivePomGeneratorTest
+{
+    private Path cacheDir;
+
+    private EffectivePomGenerator generator;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        cacheDir = Files.createTempDirectory( "xmvn-test" );
+        generator = new EffectivePomGenerator( new CacheManager( cacheDir, Long.MAX_VALUE ) );
+    }
+
+    private void addTextElement( Document document, Element parent, String name, String value, String defaultValue )
+    {
+        if ( value == null || defaultValue == null || !value.equals( defaultValue ) )
+        {
+            Element child = document.createElement( name );
+            parent.appendChild( child );
+            child.appendChild( document.createTextNode( value == null ? defaultValue : value ) );
+        }
+    }
+
+    /**
+     * Serialize effective POM the way it used to be done, by building DOM tree and serializing it with identity
+     * transformer.
+     */
+    private String serializeWithTransformer( ArtifactMetadata metadata, Artifact artifact )
+        throws Exception
+    {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        document.setXmlStandalone( true );
+
+        Element project = document.createElement( "project" );
+        document.appendChild( project );
+        addTextElement( document, project, "modelVersion", "4.0.0", null );
+        addTextElement( document, project, "groupId", artifact.getGroupId(), null );
+        addTextElement( document, project, "artifactId", artifact.getArtifactId(), null );
+        addTextElement( document, project, "version", artifact.getVersion(), null );
+
+        Element dependencies = document.createElement( "dependencies" );
+        for ( Dependency dependency : metadata.getDependencies() )
+        {
+            Element dependencyNode = document.createElement( "dependency" );
+            dependencies.appendChild( dependencyNode );
+            addTextElement( document, dependencyNode, "groupId", dependency.getGroupId(), null );
+            addTextElement( document, dependencyNode, "artifactId", dependency.getArtifactId(), null );
+            addTextElement( document, dependencyNode, "type", dependency.getExtension(), "jar" );
+            addTextElement( document, dependencyNode, "classifier", dependency.getClassifier(), "" );
+            addTextElement( document, dependencyNode, "version", dependency.getRequestedVersion(), null );
+            Boolean optional = Boolean.valueOf( dependency.isOptional() != null && dependency.isOptional() );
+            addTextElement( document, dependencyNode, "optional", optional.toString(), "false" );
+
+            Element exclusions = document.createElement( "exclusions" );
+            for ( DependencyExclusion exclusion : dependency.getExclusions() )
+            {
+                Element exclusionNode = document.createElement( "exclusion" );
+                exclusions.appendChild( exclusionNode );
+                addTextElement( document, exclusionNode, "groupId", exclusion.getGroupId(), null );
+                addTextElement( document, exclusionNode, "artifactId", exclusion.getArtifactId(), null );
+            }
+            if ( exclusions.hasChildNodes() )
+                dependencyNode.appendChild( exclusions );
+        }
+        if ( dependencies.hasChildNodes() )
+            project.appendChild( dependencies );
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
+        transformer.setOutputProperty( "{http://xml.apache.org/xslt}indent-amount", "2" );
+        StringWriter writer = new StringWriter();
+        transformer.transform( new DOMSource( document ), new StreamResult( writer ) );
+        return writer.toString();
+    }
+
+    private void assertSameAsTransformer( ArtifactMetadata metadata, Artifact artifact )
+        throws Exception
+    {
+        assertEquals( serializeWithTransformer( metadata, artifact ),
+                      generator.serializeEffectivePom( metadata, artifact ) );
+    }
+
+    private Dependency createDependency( String groupId, String artifactId )
+    {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId( groupId );
+        dependency.setArtifactId( artifactId );
+        return dependency;
+    }
+
+    /**
+     * Test if POM without dependencies is serialized the same way as by transformer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNoDependencies()
+        throws Exception
+    {
+        assertSameAsTransformer( new ArtifactMetadata(), new DefaultArtifact( "gid:aid:pom:1.2.3" ) );
+    }
+
+    /**
+     * Test if POM with dependencies and exclusions is serialized the same way as by transformer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDependencies()
+        throws Exception
+    {
+        ArtifactMetadata metadata = new ArtifactMetadata();
+
+        metadata.addDependency( createDependency( "dep1", "plain" ) );
+
+        Dependency dependency = createDependency( "dep2", "full" );
+        dependency.setExtension( "war" );
+        dependency.setClassifier( "tests" );
+        dependency.setRequestedVersion( "4.5" );
+        dependency.setOptional( true );
+        DependencyExclusion exclusion = new DependencyExclusion();
+        exclusion.setGroupId( "excluded" );
+        exclusion.setArtifactId( "artifact" );
+        dependency.addExclusion( exclusion );
+        metadata.addDependency( dependency );
+
+        Dependency dependency3 = createDependency( "dep3", "defaults" );
+        dependency3.setExtension( "jar" );
+        dependency3.setClassifier( "" );
+        dependency3.setOptional( false );
+        metadata.addDependency( dependency3 );
+
+        assertSameAsTransformer( metadata, new DefaultArtifact( "gid:aid:pom:SYSTEM" ) );
+    }
+
+    /**
+     * Test if special characters are escaped the same way as by transformer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSpecialCharacters()
+        throws Exception
+    {
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        StringBuilder text = new StringBuilder( "&<>\"']]>\t\r\n\u00e9 \ud83d\ude00" );
+        for ( char c = 0x20; c < 0x100; c++ )
+            text.append( c );
+        metadata.addDependency( createDependency( "dep", text.toString() ) );
+        metadata.addDependency( createDependency( "dep", "" ) );
+
+        assertSameAsTransformer( metadata, new DefaultArtifact( "gid:a\u00efd:pom:1/2" ) );
+    }
+
+    /**
+     * Test if characters which can't be represented in XML and unpaired surrogates are rejected.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidCharacters()
+        throws Exception
+    {
+        for ( String text : new String[] { "a\u0000b", "a\u001fb", "a\ufffeb", "a\ud800b", "a\udc00b", "a\ud800" } )
+        {
+            ArtifactMetadata metadata = new ArtifactMetadata();
+            metadata.addDependency( createDependency( "dep", text ) );
+
+            try
+            {
+                generator.serializeEffectivePom( metadata, new DefaultArtifact( "gid:aid:pom:SYSTEM" ) );
+                fail();
+            }
+            catch ( IOException e )
+            {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Test if generated POMs are stored in content-addressed cache.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPomCache()
+        throws Exception
+    {
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        metadata.setUuid( "uuid-1" );
+        metadata.addDependency( createDependency( "dep", "dep" ) );
+        Artifact artifact = new DefaultArtifact( "gid:aid:pom:SYSTEM" );
+
+        Path pomPath = generator.generateEffectivePom( metadata, artifact );
+        assertTrue( pomPath.startsWith( cacheDir ) );
+        assertEquals( "aid-SYSTEM.pom", pomPath.getFileName().toString() );
+        assertEquals( generator.serializeEffectivePom( metadata, artifact ),
+                      new String( Files.readAllBytes( pomPath ), StandardCharsets.UTF_8 ) );
+        assertEquals( pomPath, generator.generateEffectivePom( metadata, artifact ) );
+
+        // The same content generated from different metadata is stored only once
+        ArtifactMetadata metadata2 = new ArtifactMetadata();
+        metadata2.setUuid( "uuid-2" );
+        metadata2.addDependency( createDependency( "dep", "dep" ) );
+        assertEquals( pomPath, generator.generateEffectivePom( metadata2, artifact ) );
+
+        // POM is generated again if cached file was removed
+        Files.delete( pomPath );
+        assertEquals( pomPath, generator.generateEffectivePom( metadata, artifact ) );
+        assertTrue( Files.isRegularFile( pomPath ) );
+
+        Path otherPomPath = generator.generateEffectivePom( metadata, new DefaultArtifact( "gid:aid:pom:1.2" ) );
+        assertNotEquals( pomPath, otherPomPath );
+        assertTrue( otherPomPath.startsWith( cacheDir ) );
+    }
+}
@@ -0,0 +1,130 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
+import org.fedoraproject.xmvn.metadata.Dependency;
+import org.fedoraproject.xmvn.metadata.PackageMetadata;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class MetadataIndexTest
+{
+    private Path cacheHome;
+
+    private Path metadataDir;
+
+    private Path fragment;
+
+    private List<String> locations;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        cacheHome = Files.createTempDirectory( "xmvn-test" );
+        metadataDir = Files.createTempDirectory( "xmvn-test" );
+        fragment = metadataDir.resolve( "metadata1.xml" );
+        Files.copy( Paths.get( "src/test/resources/metadata1.xml" ), fragment );
+        locations = Collections.singletonList( metadataDir.toString() );
+    }
+
+    private BasicFileAttributes attributes( Path path )
+        throws Exception
+    {
+        return Files.readAttributes( path, BasicFileAttributes.class );
+    }
+
+    /**
+     * Test if metadata read through the index is stored and can be retrieved by subsequent index instances.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexRoundTrip()
+        throws Exception
+    {
+        List<PackageMetadata> list =
+            new MetadataReader().readMetadata( locations, new MetadataIndex( cacheHome, locations ) );
+        assertEquals( 1, list.size() );
+
+        MetadataIndex index = new MetadataIndex( cacheHome, locations );
+        assertArrayEquals( new String[] { "metadata1.xml" },
+                           index.lookupDirectory( metadataDir, attributes( metadataDir ) ) );
+
+        PackageMetadata pm = index.lookupFragment( fragment, attributes( fragment ) );
+        assertNotNull( pm );
+        assertEquals( "p-uuid", pm.getUuid() );
+        assertEquals( "value", pm.getProperties().getProperty( "key" ) );
+        assertEquals( 1, pm.getArtifacts().size() );
+        assertEquals( 1, pm.getSkippedArtifacts().size() );
+        assertEquals( "s-cla", pm.getSkippedArtifacts().get( 0 ).getClassifier() );
+
+        ArtifactMetadata am = pm.getArtifacts().get( 0 );
+        assertEquals( "gid:aid:ext:cla:ver", am.toString() );
+        assertEquals( "/foo/bar", am.getPath() );
+        assertEquals( "myscl10", am.getNamespace() );
+        assertEquals( "a-uuid", am.getUuid() );
+        assertEquals( "value1", am.getProperties().getProperty( "key1" ) );
+        assertEquals( Collections.singletonList( "1.2-beta3" ), am.getCompatVersions() );
+        assertEquals( "a-cla", am.getAliases().get( 0 ).getClassifier() );
+
+        Dependency dep = am.getDependencies().get( 0 );
+        assertEquals( "d-gid:d-aid:d-ext:d-cla:1.2.3", dep.toString() );
+        assertEquals( "4.5.6", dep.getResolvedVersion() );
+        assertEquals( "xyzzy", dep.getNamespace() );
+        assertNull( dep.isOptional() );
+        assertEquals( "e-aid", dep.getExclusions().get( 0 ).getArtifactId() );
+    }
+
+    /**
+     * Test if modified metadata fragments are not retrieved from the index.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testModifiedFragment()
+        throws Exception
+    {
+        new MetadataReader().readMetadata( locations, new MetadataIndex( cacheHome, locations ) );
+
+        Files.write( fragment, "\n".getBytes(), StandardOpenOption.APPEND );
+
+        MetadataIndex index = new MetadataIndex( cacheHome, locations );
+        assertNull( index.lookupFragment( fragment, attributes( fragment ) ) );
+
+        List<PackageMetadata> list = new MetadataReader().readMetadata( locations, index );
+        assertEquals( 1, list.size() );
+        assertNotNull( new MetadataIndex( cacheHome, locations ).lookupFragment( fragment, attributes( fragment ) ) );
+    }
+}
@@ -223,4 +223,48 @@ public class MetadataReaderTest
         assertEquals( 1, compatVersions2.size() );
         assertEquals( "1.0", compatVersions2.iterator().next() );
     }
+
+    /**
+     * Test if metadata can be read after changing number of reader threads and after shutting down reader executor.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExecutorLifecycle()
+        throws Exception
+    {
+        List<String> pathList = Collections.singletonList( "src/test/resources/metadata1.xml" );
+
+        try
+        {
+            MetadataReader.setThreadCount( 1 );
+            assertEquals( 1, reader.readMetadata( pathList ).size() );
+
+            MetadataReader.setThreadCount( 4 );
+            assertEquals( 1, reader.readMetadata( pathList ).size() );
+
+            MetadataReader.shutdown();
+            assertEquals( 1, new MetadataReader().readMetadata( pathList ).size() );
+
+            // Readers created before shutdown must not use terminated executor
+            MetadataReader.shutdown();
+            assertEquals( 1, reader.readMetadata( pathList ).size() );
+        }
+        finally
+        {
+            MetadataReader.setThreadCount( 0 );
+        }
+    }
+
+    /**
+     * Test if invalid number of reader threads is rejected.
+     * 
+     * @throws Exception
+     */
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidThreadCount()
+        throws Exception
+    {
+        MetadataReader.setThreadCount( -1 );
+    }
 }
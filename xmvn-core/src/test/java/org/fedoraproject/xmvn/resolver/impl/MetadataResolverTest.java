@@ -18,9 +18,21 @@ package org.fedoraproject.xmvn.resolver.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
-
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
@@ -106,4 +118,89 @@ public class MetadataResolverTest
 
         assertNull( am );
     }
+
+    /**
+     * Test if invalidation of mappings picks up new metadata while reusing unchanged metadata.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIncrementalInvalidation()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory( "xmvn-test" );
+        Files.copy( Paths.get( "src/test/resources/metadata1.xml" ), dir.resolve( "metadata1.xml" ) );
+        MetadataResolver resolver = new MetadataResolver( Collections.singletonList( dir.toString() ) );
+
+        Artifact artifact = new DefaultArtifact( "gid", "aid", "ext", "cla", "1.2-beta3" );
+        Artifact otherArtifact = new DefaultArtifact( "org.foo", "bar", Artifact.DEFAULT_VERSION );
+        ArtifactMetadata am = resolver.resolveArtifactMetadata( artifact );
+        assertNotNull( am );
+        assertNull( resolver.resolveArtifactMetadata( otherArtifact ) );
+
+        String otherMetadata = "<metadata><artifacts><artifact><groupId>org.foo</groupId><artifactId>bar</artifactId>"
+            + "<version>1.0</version><path>/foo/bar.jar</path></artifact></artifacts></metadata>";
+        Files.write( dir.resolve( "metadata2.xml" ), otherMetadata.getBytes( "UTF-8" ) );
+        // Make sure directory modification time changes even on file systems with coarse timestamps
+        Files.setLastModifiedTime( dir, FileTime.fromMillis( System.currentTimeMillis() + 2000 ) );
+        resolver.invalidateMappings();
+
+        assertSame( am, resolver.resolveArtifactMetadata( artifact ) );
+        ArtifactMetadata otherAm = resolver.resolveArtifactMetadata( otherArtifact );
+        assertNotNull( otherAm );
+        assertEquals( "/foo/bar.jar", otherAm.getPath() );
+    }
+
+    /**
+     * Test if concurrent lookups always see consistent mappings while mappings are being invalidated.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentInvalidation()
+        throws Exception
+    {
+        List<String> pathList = Collections.singletonList( "src/test/resources/metadata1.xml" );
+        MetadataResolver resolver = new MetadataResolver( pathList );
+
+        Artifact artifact = new DefaultArtifact( "gid", "aid", "ext", "cla", "1.2-beta3" );
+        Artifact alias = new DefaultArtifact( "a-gid", "a-aid", "a-ext", "a-cla", "1.2-beta3" );
+
+        int nThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+        AtomicBoolean done = new AtomicBoolean();
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        try
+        {
+            for ( int i = 0; i < nThreads; i++ )
+            {
+                Artifact target = i % 2 == 0 ? artifact : alias;
+                futures.add( executor.submit( ( ) -> {
+                    int lookups = 0;
+                    do
+                    {
+                        ArtifactMetadata am = resolver.resolveArtifactMetadata( target );
+                        assertNotNull( am );
+                        assertEquals( "/foo/bar", am.getPath() );
+                        lookups++;
+                    }
+                    while ( !done.get() );
+                    return lookups;
+                } ) );
+            }
+
+            for ( int i = 0; i < 50; i++ )
+                resolver.invalidateMappings();
+        }
+        finally
+        {
+            done.set( true );
+            executor.shutdown();
+            executor.awaitTermination( 1, TimeUnit.MINUTES );
+        }
+
+        for ( Future<Integer> future : futures )
+            assertTrue( future.get() > 0 );
+    }
 }
@@ -0,0 +1,74 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class ResolutionCacheTest
+{
+    private Path cacheFile;
+
+    private Path artifactPath;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory( "xmvn-test" );
+        cacheFile = dir.resolve( "cache" ).resolve( "resolutions.properties" );
+        artifactPath = Files.createFile( dir.resolve( "foo.jar" ) );
+    }
+
+    /**
+     * Test if stored results are visible to other cache instances as long as metadata generation doesn't change.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPersistentCache()
+        throws Exception
+    {
+        ResolutionCache cache = new ResolutionCache( cacheFile );
+        assertNull( cache.get( "gen1", "foo" ) );
+        cache.put( "gen1", "foo", artifactPath, "ns", "1.2.3" );
+        cache.put( "gen1", "bar", Paths.get( "/nonexistent/bar.jar" ), "", null );
+        assertNotNull( cache.get( "gen1", "foo" ) );
+        cache.store();
+
+        cache = new ResolutionCache( cacheFile );
+        DefaultResolutionResult result = cache.get( "gen1", "foo" );
+        assertNotNull( result );
+        assertEquals( artifactPath, result.getArtifactPath() );
+        assertEquals( "ns", result.getNamespace() );
+        assertEquals( "1.2.3", result.getCompatVersion() );
+        assertNull( cache.get( "gen1", "bar" ) );
+
+        cache = new ResolutionCache( cacheFile );
+        assertNull( cache.get( "gen2", "foo" ) );
+    }
+}
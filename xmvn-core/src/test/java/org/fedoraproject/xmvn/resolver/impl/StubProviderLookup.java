@@ -0,0 +1,68 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.resolver.impl;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provider lookup backed by a fixed map, which records all lookup batches and can simulate lookup failures.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class StubProviderLookup
+    implements ProviderLookup
+{
+    private final Map<Path, String> providers = new HashMap<>();
+
+    private final List<List<Path>> batches = new ArrayList<>();
+
+    private boolean failing;
+
+    public void addProvider( Path path, String provider )
+    {
+        providers.put( path, provider );
+    }
+
+    public void setFailing( boolean failing )
+    {
+        this.failing = failing;
+    }
+
+    public List<List<Path>> getBatches()
+    {
+        return batches;
+    }
+
+    @Override
+    public Map<Path, String> lookupProviders( Collection<Path> paths )
+    {
+        batches.add( new ArrayList<>( paths ) );
+
+        Map<Path, String> result = new HashMap<>();
+        if ( failing )
+            return result;
+
+        for ( Path path : paths )
+            result.put( path, providers.get( path ) );
+
+        return result;
+    }
+}
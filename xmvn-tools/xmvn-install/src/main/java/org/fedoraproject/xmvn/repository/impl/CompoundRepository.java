@@ -16,10 +16,14 @@
 package org.fedoraproject.xmvn.repository.impl;
 
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.fedoraproject.xmvn.artifact.Artifact;
 import org.fedoraproject.xmvn.repository.ArtifactContext;
@@ -32,6 +36,9 @@ import org.fedoraproject.xmvn.repository.Repository;
  * <p>
  * All requests are forwarded to repositories backing this compound repository. If no repositories are aggregated then
  * this repository is equivalent to empty repository.
+ * <p>
+ * Backing repositories are immutable, so results of primary artifact path lookups and root paths are memoized. This
+ * class is thread-safe.
  * 
  * @author Mikolaj Izdebski
  */
@@ -42,6 +49,10 @@ class CompoundRepository
 
     private final List<Repository> slaveRepositories;
 
+    private final Map<List<Object>, Optional<Path>> primaryArtifactPaths = new ConcurrentHashMap<>();
+
+    private volatile Set<Path> rootPaths;
+
     public CompoundRepository( String namespace, Path prefix, List<Repository> slaveRepositories )
     {
         super( namespace );
@@ -51,6 +62,19 @@ class CompoundRepository
 
     @Override
     public Path getPrimaryArtifactPath( Artifact artifact, ArtifactContext context, String pattern )
+    {
+        List<Object> key = Arrays.asList( artifact, context, pattern );
+        Optional<Path> path = primaryArtifactPaths.get( key );
+        if ( path == null )
+        {
+            path = Optional.ofNullable( findPrimaryArtifactPath( artifact, context, pattern ) );
+            primaryArtifactPaths.putIfAbsent( key, path );
+        }
+
+        return path.orElse( null );
+    }
+
+    private Path findPrimaryArtifactPath( Artifact artifact, ArtifactContext context, String pattern )
     {
         for ( Repository repository : slaveRepositories )
         {
@@ -67,13 +91,19 @@ class CompoundRepository
     @Override
     public Set<Path> getRootPaths()
     {
-        Set<Path> rootPaths = new LinkedHashSet<>();
+        Set<Path> paths = rootPaths;
+        if ( paths != null )
+            return paths;
+
+        paths = new LinkedHashSet<>();
 
         for ( Repository repository : slaveRepositories )
         {
-            rootPaths.addAll( repository.getRootPaths() );
+            paths.addAll( repository.getRootPaths() );
         }
 
-        return Collections.unmodifiableSet( rootPaths );
+        paths = Collections.unmodifiableSet( paths );
+        rootPaths = paths;
+        return paths;
     }
 }
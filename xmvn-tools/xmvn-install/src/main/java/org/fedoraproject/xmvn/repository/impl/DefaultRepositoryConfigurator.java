@@ -15,13 +15,18 @@
  */
 package org.fedoraproject.xmvn.repository.impl;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.fedoraproject.xmvn.config.Configuration;
 import org.fedoraproject.xmvn.config.Configurator;
 import org.fedoraproject.xmvn.repository.Repository;
 import org.fedoraproject.xmvn.repository.RepositoryConfigurator;
@@ -44,6 +49,33 @@ public class DefaultRepositoryConfigurator
 
     private final Map<String, RepositoryFactory> repositoryFactories;
 
+    /**
+     * Repositories configured from particular configuration snapshot.
+     */
+    private static class RepositoryCache
+    {
+        private final Configuration configuration;
+
+        private final Map<String, org.fedoraproject.xmvn.config.Repository> descriptors = new HashMap<>();
+
+        private final Map<List<String>, Repository> repositories = new ConcurrentHashMap<>();
+
+        public RepositoryCache( Configuration configuration )
+        {
+            this.configuration = configuration;
+
+            for ( org.fedoraproject.xmvn.config.Repository repository : configuration.getRepositories() )
+                if ( repository.getId() != null )
+                    descriptors.putIfAbsent( repository.getId(), repository );
+        }
+    }
+
+    /**
+     * Repositories configured from the latest configuration returned by configurator. Configured repositories are
+     * immutable, so they can be shared between all callers, including concurrent installer threads.
+     */
+    private volatile RepositoryCache cache;
+
     @Inject
     public DefaultRepositoryConfigurator( Configurator configurator,
                                           Map<String, RepositoryFactory> repositoryFactories )
@@ -52,13 +84,18 @@ public class DefaultRepositoryConfigurator
         this.repositoryFactories = repositoryFactories;
     }
 
-    private org.fedoraproject.xmvn.config.Repository findDescriptor( String repoId )
+    private RepositoryCache getCache()
     {
-        for ( org.fedoraproject.xmvn.config.Repository repository : configurator.getConfiguration().getRepositories() )
-            if ( repository.getId() != null && repository.getId().equals( repoId ) )
-                return repository;
+        Configuration configuration = configurator.getConfiguration();
+
+        RepositoryCache currentCache = cache;
+        if ( currentCache == null || currentCache.configuration != configuration )
+        {
+            currentCache = new RepositoryCache( configuration );
+            cache = currentCache;
+        }
 
-        return null;
+        return currentCache;
     }
 
     @Override
@@ -70,7 +107,25 @@ public class DefaultRepositoryConfigurator
     @Override
     public Repository configureRepository( String repoId, String namespace )
     {
-        org.fedoraproject.xmvn.config.Repository desc = findDescriptor( repoId );
+        RepositoryCache currentCache = getCache();
+        List<String> key = Arrays.asList( repoId, namespace );
+
+        Repository repository = currentCache.repositories.get( key );
+        if ( repository == null )
+        {
+            // Compound repositories configure their slaves recursively, so computeIfAbsent() can't be used here
+            repository = createRepository( currentCache, repoId );
+            Repository previous = currentCache.repositories.putIfAbsent( key, repository );
+            if ( previous != null )
+                repository = previous;
+        }
+
+        return repository;
+    }
+
+    private Repository createRepository( RepositoryCache currentCache, String repoId )
+    {
+        org.fedoraproject.xmvn.config.Repository desc = currentCache.descriptors.get( repoId );
         if ( desc == null )
             throw new RuntimeException( "Repository '" + repoId + "' is not configured." );
 
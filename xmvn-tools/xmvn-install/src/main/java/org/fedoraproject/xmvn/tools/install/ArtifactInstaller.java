@@ -23,6 +23,42 @@ import org.fedoraproject.xmvn.metadata.ArtifactMetadata;
  */
 public interface ArtifactInstaller
 {
+    /**
+     * Prepare artifact for installation.
+     * <p>
+     * This method is called before {@link #install(JavaPackage, ArtifactMetadata, PackagingRule, String)} and it can
+     * be called concurrently for different artifacts, therefore it must not modify any state shared with other
+     * artifacts, including target packages. Time-consuming work which depends on artifact only, like inspecting or
+     * transforming artifact files, should be done here.
+     * 
+     * @param am metadata of artifact which is about to be installed
+     * @throws ArtifactInstallationException
+     */
+    default void prepare( ArtifactMetadata am )
+        throws ArtifactInstallationException
+    {
+        // Nothing to do by default
+    }
+
+    /**
+     * Reuse preparation of artifact done by previous installation.
+     * <p>
+     * This method is called instead of {@link #prepare(ArtifactMetadata)} when artifact file was already prepared for
+     * installation by previous installation and it wasn't modified since. Artifact properties which were set by
+     * previous preparation are restored before this method is called. Like {@link #prepare(ArtifactMetadata)}, this
+     * method can be called concurrently for different artifacts.
+     * <p>
+     * Default implementation prepares artifact again.
+     * 
+     * @param am metadata of artifact which is about to be installed
+     * @throws ArtifactInstallationException
+     */
+    default void reusePreparation( ArtifactMetadata am )
+        throws ArtifactInstallationException
+    {
+        prepare( am );
+    }
+
     void install( JavaPackage targetPackage, ArtifactMetadata am, PackagingRule rule, String basePackageName )
         throws ArtifactInstallationException;
 
@@ -16,6 +16,7 @@
 package org.fedoraproject.xmvn.tools.install;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -57,7 +58,18 @@ public class Directory
         throws IOException
     {
         if ( !Files.isDirectory( targetAbsolutePath, LinkOption.NOFOLLOW_LINKS ) )
-            Files.createDirectory( targetAbsolutePath );
+        {
+            try
+            {
+                Files.createDirectory( targetAbsolutePath );
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                // Directory could have been created concurrently by installation of another package
+                if ( !Files.isDirectory( targetAbsolutePath, LinkOption.NOFOLLOW_LINKS ) )
+                    throw e;
+            }
+        }
     }
 
     @Override
@@ -16,6 +16,7 @@
 package org.fedoraproject.xmvn.tools.install;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -50,6 +51,22 @@ public abstract class File
     protected abstract void installContents( Path targetAbsolutePath )
         throws IOException;
 
+    /**
+     * Install the file into specified location, using given file copier to copy file contents.
+     * <p>
+     * By default file copier is not used and this method is equivalent to {@link #installContents(Path)}. Subclasses
+     * which copy file contents should override it.
+     * 
+     * @param targetAbsolutePath absolute path to the target file
+     * @param copier file copier
+     * @throws IOException
+     */
+    protected void installContents( Path targetAbsolutePath, FileCopier copier )
+        throws IOException
+    {
+        installContents( targetAbsolutePath );
+    }
+
     /**
      * Get additional file attributes to be added to file descriptor.
      * <p>
@@ -117,6 +134,19 @@ public abstract class File
      */
     public void install( Path installRoot )
         throws IOException
+    {
+        install( installRoot, new FileCopier() );
+    }
+
+    /**
+     * Install file into specified root directory, using given file copier to copy file contents.
+     * 
+     * @param installRoot
+     * @param copier
+     * @throws IOException
+     */
+    public void install( Path installRoot, FileCopier copier )
+        throws IOException
     {
         installRoot = installRoot.toAbsolutePath();
 
@@ -127,13 +157,22 @@ public abstract class File
         }
         else
         {
-            Files.createDirectory( installRoot );
+            try
+            {
+                Files.createDirectory( installRoot );
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                // Installation root could have been created concurrently by installation of another package
+                if ( !Files.isDirectory( installRoot ) )
+                    throw e;
+            }
         }
 
         Path targetAbsolutePath = installRoot.resolve( targetPath );
         Files.createDirectories( targetAbsolutePath.getParent() );
 
-        installContents( targetAbsolutePath );
+        installContents( targetAbsolutePath, copier );
     }
 
     /**
@@ -0,0 +1,275 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies contents of regular files into installation root, using the cheapest method allowed by copy mode.
+ * <p>
+ * Depending on copy mode, files can be installed as hard links to source files or as reflinks (copy-on-write clones
+ * sharing data blocks with source files, supported by file systems like Btrfs or XFS). If the requested method can't
+ * be used for particular file then the next cheaper method is tried, down to copying file contents with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * This class is thread-safe. It keeps track of number of bytes installed with each method.
+ *
+ * @author Mikolaj Izdebski
+ */
+public class FileCopier
+{
+    private static final String CP = "/usr/bin/cp";
+
+    private final Logger logger = LoggerFactory.getLogger( FileCopier.class );
+
+    /**
+     * Method of installing regular files.
+     */
+    public enum Mode
+    {
+        /**
+         * Always copy file contents.
+         */
+        COPY,
+
+        /**
+         * Clone files if file system supports reflinks, otherwise copy them.
+         */
+        REFLINK,
+
+        /**
+         * Create hard links to source files if they are on the same file system as target files, otherwise behave like
+         * {@link #REFLINK}. Installed files share inode with source files, so source files must not be modified in
+         * place after installation.
+         */
+        HARDLINK;
+
+        /**
+         * Parse copy mode from its name, as used in configuration.
+         *
+         * @param name name of copy mode (case-insensitive), or {@code null}
+         * @return copy mode, {@link #COPY} if name is {@code null} or empty
+         * @throws IllegalArgumentException if there is no copy mode with given name
+         */
+        public static Mode fromString( String name )
+        {
+            if ( name == null || name.isEmpty() )
+                return COPY;
+
+            return valueOf( name.toUpperCase( Locale.ROOT ) );
+        }
+    }
+
+    private final Mode mode;
+
+    /**
+     * Pairs of file stores between which reflinks are known not to work.
+     */
+    private final Map<List<FileStore>, Boolean> reflinkUnsupported = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytesCopied = new AtomicLong();
+
+    private final AtomicLong bytesCloned = new AtomicLong();
+
+    private final AtomicLong bytesLinked = new AtomicLong();
+
+    /**
+     * Create file copier which always copies file contents.
+     */
+    public FileCopier()
+    {
+        this( Mode.COPY );
+    }
+
+    /**
+     * Create file copier using given copy mode.
+     *
+     * @param mode copy mode
+     */
+    public FileCopier( Mode mode )
+    {
+        this.mode = mode;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Get number of bytes installed by copying file contents, including files written from memory.
+     *
+     * @return number of bytes copied
+     */
+    public long getBytesCopied()
+    {
+        return bytesCopied.get();
+    }
+
+    /**
+     * Get number of bytes installed by creating reflinks.
+     *
+     * @return number of bytes cloned
+     */
+    public long getBytesCloned()
+    {
+        return bytesCloned.get();
+    }
+
+    /**
+     * Get number of bytes installed by creating hard links.
+     *
+     * @return number of bytes linked
+     */
+    public long getBytesLinked()
+    {
+        return bytesLinked.get();
+    }
+
+    private boolean tryHardLink( Path source, Path target, long size )
+    {
+        try
+        {
+            Files.createLink( target, source );
+            bytesLinked.addAndGet( size );
+            return true;
+        }
+        catch ( IOException | UnsupportedOperationException e )
+        {
+            logger.debug( "Unable to create hard link {} -> {}", target, source, e );
+            return false;
+        }
+    }
+
+    private boolean tryReflink( Path source, Path target, long size, List<FileStore> stores )
+        throws IOException
+    {
+        if ( reflinkUnsupported.containsKey( stores ) || !Files.isExecutable( Paths.get( CP ) ) )
+            return false;
+
+        ProcessBuilder builder = new ProcessBuilder( CP, "--reflink=always", "--", source.toString(),
+                                                     target.toString() );
+        builder.redirectOutput( new java.io.File( "/dev/null" ) );
+        builder.redirectError( new java.io.File( "/dev/null" ) );
+        Process child = builder.start();
+        child.getOutputStream().close();
+
+        try
+        {
+            if ( child.waitFor() == 0 )
+            {
+                bytesCloned.addAndGet( size );
+                return true;
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( e );
+        }
+
+        // Partially created target file may be left behind
+        Files.deleteIfExists( target );
+        logger.debug( "Reflinks are not supported between {} and {}", stores.get( 0 ), stores.get( 1 ) );
+        reflinkUnsupported.put( stores, Boolean.TRUE );
+        return false;
+    }
+
+    private void transfer( Path source, Path target )
+        throws IOException
+    {
+        try (FileChannel in = FileChannel.open( source, READ );
+                        FileChannel out = FileChannel.open( target, CREATE_NEW, WRITE ))
+        {
+            long size = in.size();
+            long position = 0;
+            while ( position < size )
+            {
+                long n = in.transferTo( position, size - position, out );
+                if ( n <= 0 )
+                    break;
+                position += n;
+            }
+
+            bytesCopied.addAndGet( position );
+        }
+    }
+
+    /**
+     * Install regular file with contents of source file. Target file must not exist.
+     *
+     * @param source path to source file
+     * @param target path to target file
+     * @throws IOException if source file can't be read or target file can't be created
+     */
+    public void copy( Path source, Path target )
+        throws IOException
+    {
+        if ( Files.exists( target, LinkOption.NOFOLLOW_LINKS ) )
+            throw new FileAlreadyExistsException( target.toString() );
+
+        if ( mode != Mode.COPY )
+        {
+            source = source.toRealPath();
+            long size = Files.size( source );
+            List<FileStore> stores =
+                Arrays.asList( Files.getFileStore( source ), Files.getFileStore( target.getParent() ) );
+
+            if ( mode == Mode.HARDLINK && stores.get( 0 ).equals( stores.get( 1 ) )
+                && tryHardLink( source, target, size ) )
+                return;
+
+            if ( tryReflink( source, target, size, stores ) )
+                return;
+        }
+
+        transfer( source, target );
+    }
+
+    /**
+     * Install regular file with given contents.
+     *
+     * @param target path to target file
+     * @param content file contents
+     * @throws IOException if target file can't be written
+     */
+    public void write( Path target, byte[] content )
+        throws IOException
+    {
+        Files.write( target, content );
+        bytesCopied.addAndGet( content.length );
+    }
+}
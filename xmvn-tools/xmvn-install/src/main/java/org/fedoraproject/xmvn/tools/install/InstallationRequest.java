@@ -32,6 +32,12 @@ public class InstallationRequest
 
     private Path descriptorRoot;
 
+    private Integer threadCount;
+
+    private Path journalPath;
+
+    private boolean staged;
+
     public boolean isCheckForUnmatchedRules()
     {
         return checkForUnmatchedRules;
@@ -81,4 +87,45 @@ public class InstallationRequest
     {
         this.descriptorRoot = descriptorRoot;
     }
+
+    public Integer getThreadCount()
+    {
+        return threadCount;
+    }
+
+    public void setThreadCount( Integer threadCount )
+    {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Get path to installation journal, which allows unchanged artifacts to reuse results of previous installation.
+     * 
+     * @return path to installation journal, or {@code null} if journal is not used
+     */
+    public Path getJournalPath()
+    {
+        return journalPath;
+    }
+
+    public void setJournalPath( Path journalPath )
+    {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * Determine whether packages should be installed into staging tree first and published into installation root only
+     * after all of them were installed successfully.
+     * 
+     * @return {@code true} if staged installation is requested
+     */
+    public boolean isStaged()
+    {
+        return staged;
+    }
+
+    public void setStaged( boolean staged )
+    {
+        this.staged = staged;
+    }
 }
@@ -0,0 +1,103 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install;
+
+import java.util.jar.Manifest;
+
+/**
+ * Facts about JAR (or WAR, EAR, ...) file gathered by {@link JarUtils#analyzeJar(java.nio.file.Path)}.
+ *
+ * @author Mikolaj Izdebski
+ */
+public class JarAnalysis
+{
+    private Manifest manifest;
+
+    private String nativeCodeEntry;
+
+    private String nativeMethodEntry;
+
+    JarAnalysis()
+    {
+    }
+
+    void setManifest( Manifest manifest )
+    {
+        this.manifest = manifest;
+    }
+
+    void setNativeCodeEntry( String nativeCodeEntry )
+    {
+        this.nativeCodeEntry = nativeCodeEntry;
+    }
+
+    void setNativeMethodEntry( String nativeMethodEntry )
+    {
+        this.nativeMethodEntry = nativeMethodEntry;
+    }
+
+    /**
+     * Get manifest of analyzed JAR.
+     *
+     * @return JAR manifest, or {@code null} if JAR doesn't have manifest
+     */
+    public Manifest getManifest()
+    {
+        return manifest;
+    }
+
+    /**
+     * Get name of the first entry which was found to contain native code.
+     *
+     * @return entry name, or {@code null} if native code was not found
+     */
+    public String getNativeCodeEntry()
+    {
+        return nativeCodeEntry;
+    }
+
+    /**
+     * Get name of the first class file which was found to declare native methods.
+     *
+     * @return entry name, or {@code null} if no native methods were found
+     */
+    public String getNativeMethodEntry()
+    {
+        return nativeMethodEntry;
+    }
+
+    /**
+     * Determine whether analyzed JAR contains native (architecture-dependent) code.
+     *
+     * @return {@code true} if native code was found inside JAR
+     * @see JarUtils#containsNativeCode(java.nio.file.Path)
+     */
+    public boolean containsNativeCode()
+    {
+        return nativeCodeEntry != null;
+    }
+
+    /**
+     * Determine whether analyzed JAR is using native (architecture-dependent) code.
+     *
+     * @return {@code true} if JAR was found to use native code
+     * @see JarUtils#usesNativeCode(java.nio.file.Path)
+     */
+    public boolean usesNativeCode()
+    {
+        return nativeMethodEntry != null;
+    }
+}
@@ -15,18 +15,19 @@
  */
 package org.fedoraproject.xmvn.tools.install;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.objectweb.asm.ClassReader;
@@ -46,45 +47,8 @@ public class JarUtils
 {
     private static final Logger logger = LoggerFactory.getLogger( JarUtils.class );
 
-    /**
-     * Heuristically try to determine whether given JAR (or WAR, EAR, ...) file contains native (architecture-dependent)
-     * code.
-     * <p>
-     * Currently this code only checks only for ELF binaries, but that behavior can change in future.
-     * 
-     * @return {@code true} if native code was found inside given JAR
-     */
-    public static boolean containsNativeCode( Path jar )
-    {
-        // From /usr/include/linux/elf.h
-        final int ELFMAG0 = 0x7F;
-        final int ELFMAG1 = 'E';
-        final int ELFMAG2 = 'L';
-        final int ELFMAG3 = 'F';
-
-        try (ZipInputStream jis = new ZipInputStream( Files.newInputStream( jar ) ))
-        {
-            ZipEntry ent;
-            while ( ( ent = jis.getNextEntry() ) != null )
-            {
-                if ( ent.isDirectory() )
-                    continue;
-                if ( jis.read() == ELFMAG0 && jis.read() == ELFMAG1 && jis.read() == ELFMAG2 && jis.read() == ELFMAG3 )
-                {
-                    logger.debug( "Native code found inside {}: {}", jar, ent.getName() );
-                    return true;
-                }
-            }
-
-            logger.trace( "Native code not found inside {}", jar );
-            return false;
-        }
-        catch ( IOException e )
-        {
-            logger.debug( "I/O exception caught when trying to determine whether JAR contains native code: {}", jar, e );
-            return false;
-        }
-    }
+    // From /usr/include/linux/elf.h
+    private static final byte[] ELF_MAGIC = { 0x7F, 'E', 'L', 'F' };
 
     static class NativeMethodFound
         extends RuntimeException
@@ -106,63 +70,165 @@ public class JarUtils
     }
 
     /**
-     * Heuristically try to determine whether given JAR (or WAR, EAR, ...) file is using native (architecture-dependent)
-     * code.
+     * Read up to {@code len} bytes from stream into buffer, growing the buffer if needed.
+     * 
+     * @return buffer holding data read, which is either the original buffer or a new, bigger one
+     */
+    private static byte[] readFully( InputStream is, byte[] buffer, int len, int[] count )
+        throws IOException
+    {
+        int n = 0;
+        while ( n < len )
+        {
+            if ( n == buffer.length )
+                buffer = Arrays.copyOf( buffer, Math.min( len, 2 * buffer.length ) );
+
+            int sz = is.read( buffer, n, Math.min( len, buffer.length ) - n );
+            if ( sz < 0 )
+                break;
+            n += sz;
+        }
+
+        count[0] = n;
+        return buffer;
+    }
+
+    private static boolean isElf( byte[] buffer, int len )
+    {
+        if ( len < ELF_MAGIC.length )
+            return false;
+
+        for ( int i = 0; i < ELF_MAGIC.length; i++ )
+            if ( buffer[i] != ELF_MAGIC[i] )
+                return false;
+
+        return true;
+    }
+
+    private static void findNativeMethods( String entryName, byte[] classFile, int len )
+    {
+        new ClassReader( classFile, 0, len ).accept( new ClassVisitor( Opcodes.ASM5 )
+        {
+            @Override
+            public MethodVisitor visitMethod( int flags, String name, String desc, String sig, String[] exc )
+            {
+                if ( ( flags & Opcodes.ACC_NATIVE ) != 0 )
+                    throw new NativeMethodFound( entryName, name, sig );
+
+                return super.visitMethod( flags, name, desc, sig, exc );
+            }
+        }, ClassReader.SKIP_CODE );
+    }
+
+    /**
+     * Analyze given JAR (or WAR, EAR, ...) file.
      * <p>
-     * Currently this code only checks if any class file declares Java native methods, but that behavior can change in
-     * future.
+     * Manifest, presence of native code (currently ELF binaries) and usage of native code (currently class files
+     * declaring Java native methods) are all determined in a single pass over JAR contents. Only class files and the
+     * first few bytes of other entries are read, and the analysis stops as soon as all facts are known.
+     * <p>
+     * I/O errors are not fatal - analysis result contains facts gathered before the error occurred.
      * 
-     * @return {@code true} given JAR as found inside to use native code
+     * @param jar path to JAR file
+     * @return result of analysis
      */
-    public static boolean usesNativeCode( Path jar )
+    public static JarAnalysis analyzeJar( Path jar )
     {
-        try (ZipInputStream jis = new ZipInputStream( Files.newInputStream( jar ) ))
+        JarAnalysis analysis = new JarAnalysis();
+
+        try (JarInputStream jis = new JarInputStream( Files.newInputStream( jar ), false ))
         {
-            ZipEntry ent;
-            while ( ( ent = jis.getNextEntry() ) != null )
+            analysis.setManifest( jis.getManifest() );
+
+            byte[] buffer = new byte[4096];
+            int[] count = new int[1];
+            JarEntry ent;
+            while ( ( !analysis.containsNativeCode() || !analysis.usesNativeCode() )
+                && ( ent = jis.getNextJarEntry() ) != null )
             {
-                final String entryName = ent.getName();
-                if ( ent.isDirectory() || !entryName.endsWith( ".class" ) )
+                String entryName = ent.getName();
+                if ( ent.isDirectory() )
                     continue;
 
-                new ClassReader( jis ).accept( new ClassVisitor( Opcodes.ASM5 )
+                boolean isClass = entryName.endsWith( ".class" ) && !analysis.usesNativeCode();
+                buffer = readFully( jis, buffer, isClass ? Integer.MAX_VALUE : ELF_MAGIC.length, count );
+
+                if ( !analysis.containsNativeCode() && isElf( buffer, count[0] ) )
                 {
-                    @Override
-                    public MethodVisitor visitMethod( int flags, String name, String desc, String sig, String[] exc )
-                    {
-                        if ( ( flags & Opcodes.ACC_NATIVE ) != 0 )
-                            throw new NativeMethodFound( entryName, name, sig );
+                    logger.debug( "Native code found inside {}: {}", jar, entryName );
+                    analysis.setNativeCodeEntry( entryName );
+                }
 
-                        return super.visitMethod( flags, name, desc, sig, exc );
+                if ( isClass )
+                {
+                    try
+                    {
+                        findNativeMethods( entryName, buffer, count[0] );
+                    }
+                    catch ( NativeMethodFound e )
+                    {
+                        logger.debug( "Native method {}({}) found in {}: {}", e.methodName, e.methodSignature, jar,
+                                      e.className );
+                        analysis.setNativeMethodEntry( entryName );
                     }
-                }, ClassReader.SKIP_CODE );
+                }
             }
 
-            return false;
-        }
-        catch ( NativeMethodFound e )
-        {
-            logger.debug( "Native method {}({}) found in {}: {}", e.methodName, e.methodSignature, jar, e.className );
-            return true;
+            if ( !analysis.containsNativeCode() )
+                logger.trace( "Native code not found inside {}", jar );
         }
         catch ( IOException e )
         {
-            logger.debug( "I/O exception caught when trying to determine whether JAR uses native code: {}", jar, e );
-            return false;
+            logger.debug( "I/O exception caught when trying to analyze JAR: {}", jar, e );
         }
+
+        return analysis;
+    }
+
+    /**
+     * Heuristically try to determine whether given JAR (or WAR, EAR, ...) file contains native (architecture-dependent)
+     * code.
+     * <p>
+     * Currently this code only checks only for ELF binaries, but that behavior can change in future.
+     * <p>
+     * When other facts about the same JAR are needed, {@link #analyzeJar(Path)} should be used instead.
+     * 
+     * @return {@code true} if native code was found inside given JAR
+     */
+    public static boolean containsNativeCode( Path jar )
+    {
+        return analyzeJar( jar ).containsNativeCode();
+    }
+
+    /**
+     * Heuristically try to determine whether given JAR (or WAR, EAR, ...) file is using native (architecture-dependent)
+     * code.
+     * <p>
+     * Currently this code only checks if any class file declares Java native methods, but that behavior can change in
+     * future.
+     * <p>
+     * When other facts about the same JAR are needed, {@link #analyzeJar(Path)} should be used instead.
+     * 
+     * @return {@code true} given JAR as found inside to use native code
+     */
+    public static boolean usesNativeCode( Path jar )
+    {
+        return analyzeJar( jar ).usesNativeCode();
     }
 
-    private static void putAttribute( Manifest manifest, String key, String value, String defaultValue )
+    private static boolean putAttribute( Manifest manifest, String key, String value, String defaultValue )
     {
         if ( defaultValue == null || !value.equals( defaultValue ) )
         {
             Attributes attributes = manifest.getMainAttributes();
-            attributes.putValue( key, value );
+            String oldValue = attributes.putValue( key, value );
             logger.trace( "Injected field {}: {}", key, value );
+            return !value.equals( oldValue );
         }
         else
         {
             logger.trace( "Not injecting field {} (it has default value \"{}\")", key, defaultValue );
+            return false;
         }
     }
 
@@ -185,12 +251,36 @@ public class JarUtils
             Collection<?> names = (Collection<?>) namesField.get( zipOutputStream );
             names.clear();
         }
-        catch ( ReflectiveOperationException e )
+        catch ( ReflectiveOperationException | RuntimeException e )
         {
             // This hack relies on OpenJDK internals and therefore is not ugarranteed to work. Ignore failures.
         }
     }
 
+    /**
+     * Write new JAR with given manifest, copying all other entries from given JAR stream.
+     */
+    private static void rewriteJar( JarInputStream jis, Path targetJar, Manifest mf )
+        throws IOException
+    {
+        Files.delete( targetJar );
+
+        try (JarOutputStream jos = new JarOutputStream( Files.newOutputStream( targetJar ), mf ))
+        {
+            byte[] buf = new byte[65536];
+            JarEntry entry;
+            while ( ( entry = jis.getNextJarEntry() ) != null )
+            {
+                openJdkAvoidDuplicateEntryHack( jos );
+                jos.putNextEntry( entry );
+
+                int sz;
+                while ( ( sz = jis.read( buf ) ) > 0 )
+                    jos.write( buf, 0, sz );
+            }
+        }
+    }
+
     /**
      * Inject artifact coordinates into manifest of specified JAR (or WAR, EAR, ...) file. The file is modified
      * in-place.
@@ -211,27 +301,32 @@ public class JarUtils
                 return;
             }
 
-            putAttribute( mf, ArtifactUtils.MF_KEY_GROUPID, artifact.getGroupId(), null );
-            putAttribute( mf, ArtifactUtils.MF_KEY_ARTIFACTID, artifact.getArtifactId(), null );
-            putAttribute( mf, ArtifactUtils.MF_KEY_EXTENSION, artifact.getExtension(), Artifact.DEFAULT_EXTENSION );
-            putAttribute( mf, ArtifactUtils.MF_KEY_CLASSIFIER, artifact.getClassifier(), "" );
-            putAttribute( mf, ArtifactUtils.MF_KEY_VERSION, artifact.getVersion(), Artifact.DEFAULT_VERSION );
+            boolean modified = false;
+            modified |= putAttribute( mf, ArtifactUtils.MF_KEY_GROUPID, artifact.getGroupId(), null );
+            modified |= putAttribute( mf, ArtifactUtils.MF_KEY_ARTIFACTID, artifact.getArtifactId(), null );
+            modified |= putAttribute( mf, ArtifactUtils.MF_KEY_EXTENSION, artifact.getExtension(),
+                                      Artifact.DEFAULT_EXTENSION );
+            modified |= putAttribute( mf, ArtifactUtils.MF_KEY_CLASSIFIER, artifact.getClassifier(), "" );
+            modified |= putAttribute( mf, ArtifactUtils.MF_KEY_VERSION, artifact.getVersion(),
+                                      Artifact.DEFAULT_VERSION );
+
+            if ( !modified )
+            {
+                logger.trace( "Manifest injection skipped: manifest already contains all fields" );
+                return;
+            }
 
             targetJar = targetJar.toRealPath();
-            Files.delete( targetJar );
 
-            try (JarOutputStream jos = new JarOutputStream( Files.newOutputStream( targetJar ), mf ))
+            try
             {
-                byte[] buf = new byte[512];
-                JarEntry entry;
-                while ( ( entry = jis.getNextJarEntry() ) != null )
+                // Normally only manifest is replaced and other entries are copied without recompressing them
+                ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+                mf.write( manifestContent );
+                if ( !ZipRewriter.replaceManifest( targetJar, manifestContent.toByteArray() ) )
                 {
-                    openJdkAvoidDuplicateEntryHack( jos );
-                    jos.putNextEntry( entry );
-
-                    int sz;
-                    while ( ( sz = jis.read( buf ) ) > 0 )
-                        jos.write( buf, 0, sz );
+                    logger.debug( "Unable to replace manifest in {}, rewriting the whole archive", targetJar );
+                    rewriteJar( jis, targetJar, mf );
                 }
             }
             catch ( IOException e )
@@ -19,8 +19,10 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.google.common.io.Files;
@@ -101,6 +103,28 @@ public class Package
             files.add( file );
     }
 
+    /**
+     * Replace a file contained in this package with another file, keeping position of the file in package.
+     * 
+     * @param file file to be replaced
+     * @param replacement file to be added in place of replaced file
+     */
+    public void replaceFile( File file, File replacement )
+    {
+        if ( !files.contains( file ) )
+            throw new IllegalArgumentException( "Package " + id + " doesn't contain file " + file.getTargetPath() );
+        if ( !file.equals( replacement ) && files.contains( replacement ) )
+            throw new IllegalArgumentException( "Package " + id + " already contains file "
+                + replacement.getTargetPath() );
+
+        List<File> newFiles = new ArrayList<>( files.size() );
+        for ( File existing : files )
+            newFiles.add( existing.equals( file ) ? replacement : existing );
+
+        files.clear();
+        files.addAll( newFiles );
+    }
+
     /**
      * Install this package into specified root.
      * <p>
@@ -114,9 +138,22 @@ public class Package
      */
     public void install( Path installRoot )
         throws IOException
+    {
+        install( installRoot, new FileCopier() );
+    }
+
+    /**
+     * Install this package into specified root, using given file copier to copy contents of regular files.
+     * 
+     * @param installRoot target directory where package files will be installed
+     * @param copier file copier
+     * @throws IOException
+     */
+    public void install( Path installRoot, FileCopier copier )
+        throws IOException
     {
         for ( File file : files )
-            file.install( installRoot );
+            file.install( installRoot, copier );
     }
 
     /**
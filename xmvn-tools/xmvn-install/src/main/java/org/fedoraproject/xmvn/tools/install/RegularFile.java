@@ -16,7 +16,6 @@
 package org.fedoraproject.xmvn.tools.install;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 import javax.inject.Provider;
@@ -130,14 +129,21 @@ public class RegularFile
     @Override
     protected void installContents( Path targetPath )
         throws IOException
+    {
+        installContents( targetPath, new FileCopier() );
+    }
+
+    @Override
+    protected void installContents( Path targetPath, FileCopier copier )
+        throws IOException
     {
         if ( sourcePath != null )
         {
-            Files.copy( sourcePath, targetPath );
+            copier.copy( sourcePath, targetPath );
         }
         else
         {
-            Files.write( targetPath, content.get() );
+            copier.write( targetPath, content.get() );
         }
     }
 }
@@ -0,0 +1,489 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Rewrites ZIP archives at the level of raw ZIP records.
+ * <p>
+ * Only the entry being replaced is compressed again. Compressed data of all other entries, together with their local
+ * and central directory headers, is copied verbatim (only offsets are adjusted), so archives with duplicate entries,
+ * data descriptors, extra fields or comments are preserved as they are.
+ *
+ * @author Mikolaj Izdebski
+ */
+class ZipRewriter
+{
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final String META_INF_NAME = "META-INF/";
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034B50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014B50;
+
+    private static final int END_SIGNATURE = 0x06054B50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064B50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064B50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_SIZE = 22;
+
+    private static final int ZIP64_END_SIZE = 56;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+    private static final int METHOD_STORED = 0;
+
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int VERSION_DEFLATED = 20;
+
+    /**
+     * Thrown when archive uses ZIP features which are not supported by this rewriter, or when it is malformed.
+     */
+    private static class UnsupportedArchiveException
+        extends Exception
+    {
+        private static final long serialVersionUID = 1;
+
+        public UnsupportedArchiveException( String message )
+        {
+            super( message );
+        }
+    }
+
+    private static class CentralEntry
+    {
+        String name;
+
+        /**
+         * Position of central directory header within central directory.
+         */
+        int headerPosition;
+
+        /**
+         * Position of local header offset field within central directory.
+         */
+        int offsetPosition;
+
+        /**
+         * Whether local header offset is stored in ZIP64 extra field.
+         */
+        boolean zip64Offset;
+
+        long localHeaderOffset;
+    }
+
+    private ZipRewriter()
+    {
+    }
+
+    private static ByteBuffer read( FileChannel channel, long position, long size )
+        throws IOException, UnsupportedArchiveException
+    {
+        if ( position < 0 || size < 0 || size > Integer.MAX_VALUE || position + size > channel.size() )
+            throw new UnsupportedArchiveException( "ZIP record lies outside of archive" );
+
+        ByteBuffer buffer = ByteBuffer.allocate( (int) size ).order( ByteOrder.LITTLE_ENDIAN );
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+                throw new UnsupportedArchiveException( "Unexpected end of archive" );
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write( FileChannel channel, ByteBuffer buffer )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+            channel.write( buffer );
+    }
+
+    private static void transfer( FileChannel source, long position, long count, FileChannel target )
+        throws IOException
+    {
+        while ( count > 0 )
+        {
+            long n = source.transferTo( position, count, target );
+            if ( n <= 0 )
+                throw new IOException( "Unexpected end of archive" );
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static int u16( ByteBuffer buffer, int position )
+    {
+        return buffer.getShort( position ) & 0xFFFF;
+    }
+
+    private static long u32( ByteBuffer buffer, int position )
+    {
+        return buffer.getInt( position ) & ZIP64_MAGIC;
+    }
+
+    private static byte[] deflate( byte[] data )
+    {
+        Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+        try
+        {
+            deflater.setInput( data );
+            deflater.finish();
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while ( !deflater.finished() )
+            {
+                int n = deflater.deflate( buffer );
+                bos.write( buffer, 0, n );
+            }
+
+            return bos.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static void findZip64Offset( ByteBuffer cd, CentralEntry entry, int extraStart, int extraEnd )
+        throws UnsupportedArchiveException
+    {
+        int pos = extraStart;
+        while ( pos + 4 <= extraEnd )
+        {
+            int id = u16( cd, pos );
+            int size = u16( cd, pos + 2 );
+            if ( id == ZIP64_EXTRA_ID )
+            {
+                // ZIP64 extra field contains only values whose fields in central header are set to 0xFFFFFFFF
+                int offsetPosition = pos + 4;
+                if ( u32( cd, entry.headerPosition + 24 ) == ZIP64_MAGIC )
+                    offsetPosition += 8;
+                if ( u32( cd, entry.headerPosition + 20 ) == ZIP64_MAGIC )
+                    offsetPosition += 8;
+                if ( offsetPosition + 8 > pos + 4 + size )
+                    break;
+
+                entry.offsetPosition = offsetPosition;
+                entry.zip64Offset = true;
+                entry.localHeaderOffset = cd.getLong( offsetPosition );
+                return;
+            }
+
+            pos += 4 + size;
+        }
+
+        throw new UnsupportedArchiveException( "Missing ZIP64 extra field" );
+    }
+
+    private static List<CentralEntry> readCentralDirectory( ByteBuffer cd, long entryCount )
+        throws UnsupportedArchiveException
+    {
+        List<CentralEntry> entries = new ArrayList<>();
+
+        int pos = 0;
+        for ( long i = 0; i < entryCount; i++ )
+        {
+            if ( pos + CENTRAL_HEADER_SIZE > cd.limit() || cd.getInt( pos ) != CENTRAL_HEADER_SIGNATURE )
+                throw new UnsupportedArchiveException( "Invalid central directory header" );
+
+            int nameLength = u16( cd, pos + 28 );
+            int extraLength = u16( cd, pos + 30 );
+            int commentLength = u16( cd, pos + 32 );
+            int end = pos + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if ( end > cd.limit() )
+                throw new UnsupportedArchiveException( "Invalid central directory header" );
+
+            CentralEntry entry = new CentralEntry();
+            entry.headerPosition = pos;
+            entry.offsetPosition = pos + 42;
+            entry.localHeaderOffset = u32( cd, pos + 42 );
+            byte[] name = new byte[nameLength];
+            for ( int j = 0; j < nameLength; j++ )
+                name[j] = cd.get( pos + CENTRAL_HEADER_SIZE + j );
+            entry.name = new String( name, StandardCharsets.UTF_8 );
+
+            if ( entry.localHeaderOffset == ZIP64_MAGIC )
+            {
+                int extraStart = pos + CENTRAL_HEADER_SIZE + nameLength;
+                findZip64Offset( cd, entry, extraStart, extraStart + extraLength );
+            }
+
+            entries.add( entry );
+            pos = end;
+        }
+
+        // Entry count can be truncated to 16 bits in archives with too many entries but without ZIP64 records, in
+        // which case some entries would not be known and their offsets would not be adjusted
+        if ( pos != cd.limit() )
+            throw new UnsupportedArchiveException( "Entry count does not match central directory size" );
+
+        return entries;
+    }
+
+    /**
+     * Replace contents of JAR manifest.
+     * <p>
+     * Manifest entry is looked up in the same way as {@link java.util.jar.JarInputStream} does it - it must be either
+     * the first entry of the archive, or the second one following {@code META-INF/} directory entry.
+     * <p>
+     * Archive is replaced atomically. In case of any error it is left unmodified.
+     *
+     * @param zip path to archive
+     * @param manifest new, uncompressed contents of manifest
+     * @return {@code true} if manifest was replaced, {@code false} if archive layout is not supported and it was left
+     *         unmodified
+     * @throws IOException if I/O error occurs
+     */
+    public static boolean replaceManifest( Path zip, byte[] manifest )
+        throws IOException
+    {
+        Path tempFile;
+        try (FileChannel in = FileChannel.open( zip, StandardOpenOption.READ ))
+        {
+            tempFile = rewrite( in, zip, manifest );
+        }
+        catch ( UnsupportedArchiveException e )
+        {
+            return false;
+        }
+
+        try
+        {
+            Files.move( tempFile, zip, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            tempFile = null;
+        }
+        finally
+        {
+            if ( tempFile != null )
+                Files.deleteIfExists( tempFile );
+        }
+
+        return true;
+    }
+
+    private static Path rewrite( FileChannel in, Path zip, byte[] manifest )
+        throws IOException, UnsupportedArchiveException
+    {
+        long fileSize = in.size();
+
+        // End of central directory record is at the end of archive, followed only by archive comment
+        int tailSize = (int) Math.min( fileSize, END_SIZE + MAX_COMMENT_SIZE );
+        ByteBuffer tail = read( in, fileSize - tailSize, tailSize );
+        int endPosition = tailSize - END_SIZE;
+        while ( endPosition >= 0 && ( tail.getInt( endPosition ) != END_SIGNATURE
+            || endPosition + END_SIZE + u16( tail, endPosition + 20 ) != tailSize ) )
+            endPosition--;
+        if ( endPosition < 0 )
+            throw new UnsupportedArchiveException( "End of central directory not found" );
+        long endOffset = fileSize - tailSize + endPosition;
+
+        if ( u16( tail, endPosition + 4 ) != 0 || u16( tail, endPosition + 6 ) != 0 )
+            throw new UnsupportedArchiveException( "Multi-volume archives are not supported" );
+        long entryCount = u16( tail, endPosition + 10 );
+        long cdSize = u32( tail, endPosition + 12 );
+        long cdOffset = u32( tail, endPosition + 16 );
+
+        long zip64EndOffset = -1;
+        if ( endOffset >= ZIP64_LOCATOR_SIZE )
+        {
+            ByteBuffer locator = read( in, endOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE );
+            if ( locator.getInt( 0 ) == ZIP64_LOCATOR_SIGNATURE )
+            {
+                zip64EndOffset = locator.getLong( 8 );
+                ByteBuffer zip64End = read( in, zip64EndOffset, ZIP64_END_SIZE );
+                if ( zip64End.getInt( 0 ) != ZIP64_END_SIGNATURE )
+                    throw new UnsupportedArchiveException( "Invalid ZIP64 end of central directory record" );
+
+                entryCount = zip64End.getLong( 32 );
+                cdSize = zip64End.getLong( 40 );
+                cdOffset = zip64End.getLong( 48 );
+            }
+        }
+
+        long cdEnd = cdOffset + cdSize;
+        if ( cdOffset < 0 || cdSize < 0 || cdEnd > ( zip64EndOffset >= 0 ? zip64EndOffset : endOffset ) )
+            throw new UnsupportedArchiveException( "Invalid central directory location" );
+
+        ByteBuffer cd = read( in, cdOffset, cdSize );
+        List<CentralEntry> entries = readCentralDirectory( cd, entryCount );
+
+        List<CentralEntry> sortedEntries = new ArrayList<>( entries );
+        sortedEntries.sort( Comparator.comparingLong( entry -> entry.localHeaderOffset ) );
+
+        CentralEntry manifestEntry = null;
+        for ( int i = 0; i < Math.min( 2, sortedEntries.size() ); i++ )
+        {
+            CentralEntry entry = sortedEntries.get( i );
+            if ( entry.name.equalsIgnoreCase( MANIFEST_NAME ) )
+                manifestEntry = entry;
+            if ( !entry.name.equalsIgnoreCase( META_INF_NAME ) )
+                break;
+        }
+        if ( manifestEntry == null )
+            throw new UnsupportedArchiveException( "Manifest not found" );
+
+        // Manifest record (local header, compressed data and optional data descriptor) ends where the next one starts
+        long manifestOffset = manifestEntry.localHeaderOffset;
+        long manifestEnd = cdOffset;
+        for ( CentralEntry entry : sortedEntries )
+        {
+            if ( entry.localHeaderOffset > manifestOffset )
+            {
+                manifestEnd = entry.localHeaderOffset;
+                break;
+            }
+        }
+
+        int mfHeader = manifestEntry.headerPosition;
+        int flags = u16( cd, mfHeader + 8 );
+        if ( ( flags & FLAG_ENCRYPTED ) != 0 || u32( cd, mfHeader + 20 ) == ZIP64_MAGIC
+            || u32( cd, mfHeader + 24 ) == ZIP64_MAGIC )
+            throw new UnsupportedArchiveException( "Unsupported manifest entry" );
+
+        ByteBuffer localHeader = read( in, manifestOffset, LOCAL_HEADER_SIZE );
+        if ( localHeader.getInt( 0 ) != LOCAL_HEADER_SIGNATURE )
+            throw new UnsupportedArchiveException( "Invalid local header" );
+        int localHeaderSize = LOCAL_HEADER_SIZE + u16( localHeader, 26 ) + u16( localHeader, 28 );
+        localHeader = read( in, manifestOffset, localHeaderSize );
+        if ( manifestOffset + localHeaderSize > manifestEnd )
+            throw new UnsupportedArchiveException( "Invalid local header" );
+
+        // Manifest is compressed with the same method as it was originally, as long as it is a standard method
+        int method = u16( cd, mfHeader + 10 ) == METHOD_STORED ? METHOD_STORED : METHOD_DEFLATED;
+        byte[] data = method == METHOD_STORED ? manifest : deflate( manifest );
+        CRC32 crc = new CRC32();
+        crc.update( manifest );
+        flags &= ~FLAG_DATA_DESCRIPTOR;
+        int versionNeeded = Math.max( u16( cd, mfHeader + 6 ), method == METHOD_DEFLATED ? VERSION_DEFLATED : 0 );
+
+        localHeader.putShort( 4, (short) versionNeeded );
+        localHeader.putShort( 6, (short) flags );
+        localHeader.putShort( 8, (short) method );
+        localHeader.putInt( 14, (int) crc.getValue() );
+        localHeader.putInt( 18, data.length );
+        localHeader.putInt( 22, manifest.length );
+
+        cd.putShort( mfHeader + 6, (short) versionNeeded );
+        cd.putShort( mfHeader + 8, (short) flags );
+        cd.putShort( mfHeader + 10, (short) method );
+        cd.putInt( mfHeader + 16, (int) crc.getValue() );
+        cd.putInt( mfHeader + 20, data.length );
+        cd.putInt( mfHeader + 24, manifest.length );
+
+        // All records following manifest are shifted
+        long delta = localHeaderSize + data.length - ( manifestEnd - manifestOffset );
+        for ( CentralEntry entry : entries )
+        {
+            if ( entry.localHeaderOffset <= manifestOffset )
+                continue;
+
+            long offset = entry.localHeaderOffset + delta;
+            if ( entry.zip64Offset )
+                cd.putLong( entry.offsetPosition, offset );
+            else if ( offset < ZIP64_MAGIC )
+                cd.putInt( entry.offsetPosition, (int) offset );
+            else
+                throw new UnsupportedArchiveException( "Entry offset would not fit in central directory header" );
+        }
+
+        // Everything after central directory: optional ZIP64 records, end of central directory and archive comment
+        ByteBuffer trailer = read( in, cdEnd, fileSize - cdEnd );
+        if ( zip64EndOffset >= 0 )
+        {
+            int zip64EndPosition = (int) ( zip64EndOffset - cdEnd );
+            trailer.putLong( zip64EndPosition + 48, cdOffset + delta );
+            int locatorPosition = (int) ( endOffset - ZIP64_LOCATOR_SIZE - cdEnd );
+            trailer.putLong( locatorPosition + 8, zip64EndOffset + delta );
+        }
+        int trailerEndPosition = (int) ( endOffset - cdEnd );
+        if ( u32( trailer, trailerEndPosition + 16 ) != ZIP64_MAGIC )
+        {
+            if ( cdOffset + delta >= ZIP64_MAGIC )
+                throw new UnsupportedArchiveException( "Central directory offset would not fit in end record" );
+            trailer.putInt( trailerEndPosition + 16, (int) ( cdOffset + delta ) );
+        }
+
+        Path tempFile = Files.createTempFile( zip.toAbsolutePath().getParent(), zip.getFileName().toString() + "-",
+                                              ".tmp" );
+        try
+        {
+            try
+            {
+                Files.setPosixFilePermissions( tempFile, Files.getPosixFilePermissions( zip ) );
+            }
+            catch ( UnsupportedOperationException e )
+            {
+                // File system doesn't support POSIX permissions
+            }
+
+            try (FileChannel out = FileChannel.open( tempFile, StandardOpenOption.WRITE ))
+            {
+                transfer( in, 0, manifestOffset, out );
+                write( out, localHeader );
+                write( out, ByteBuffer.wrap( data ) );
+                transfer( in, manifestEnd, cdOffset - manifestEnd, out );
+                cd.rewind();
+                write( out, cd );
+                write( out, trailer );
+            }
+
+            Path result = tempFile;
+            tempFile = null;
+            return result;
+        }
+        finally
+        {
+            if ( tempFile != null )
+                Files.deleteIfExists( tempFile );
+        }
+    }
+}
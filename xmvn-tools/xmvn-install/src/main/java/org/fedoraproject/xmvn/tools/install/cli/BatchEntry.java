@@ -0,0 +1,117 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single installation described in batch manifest.
+ * <p>
+ * Batch manifest is a text file with one installation per line. Each line consists of whitespace-separated path to
+ * installation plan, base package name, path to installation root and optional path to directory where package
+ * descriptors are written. If descriptor directory is not specified then descriptors are written into directory
+ * containing installation plan. Empty lines and lines starting with {@code #} are ignored.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class BatchEntry
+{
+    private final Path planPath;
+
+    private final String packageName;
+
+    private final Path installRoot;
+
+    private final Path descriptorRoot;
+
+    public BatchEntry( Path planPath, String packageName, Path installRoot, Path descriptorRoot )
+    {
+        this.planPath = planPath;
+        this.packageName = packageName;
+        this.installRoot = installRoot;
+        this.descriptorRoot = descriptorRoot;
+    }
+
+    public Path getPlanPath()
+    {
+        return planPath;
+    }
+
+    public String getPackageName()
+    {
+        return packageName;
+    }
+
+    public Path getInstallRoot()
+    {
+        return installRoot;
+    }
+
+    public Path getDescriptorRoot()
+    {
+        return descriptorRoot;
+    }
+
+    @Override
+    public String toString()
+    {
+        return planPath + " (" + packageName + ")";
+    }
+
+    /**
+     * Read batch manifest.
+     * 
+     * @param manifestPath path to batch manifest
+     * @return list of installations, in manifest order
+     * @throws IOException if manifest can't be read or is malformed
+     */
+    public static List<BatchEntry> readManifest( Path manifestPath )
+        throws IOException
+    {
+        List<BatchEntry> entries = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader( manifestPath, StandardCharsets.UTF_8 ))
+        {
+            int lineNumber = 0;
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                lineNumber++;
+                line = line.trim();
+                if ( line.isEmpty() || line.startsWith( "#" ) )
+                    continue;
+
+                String[] fields = line.split( "\\s+" );
+                if ( fields.length < 3 || fields.length > 4 )
+                    throw new IOException( manifestPath + ":" + lineNumber
+                        + ": expected plan path, package name, installation root and optional descriptor root" );
+
+                Path planPath = Paths.get( fields[0] );
+                Path descriptorRoot =
+                    fields.length > 3 ? Paths.get( fields[3] ) : planPath.toAbsolutePath().getParent();
+                entries.add( new BatchEntry( planPath, fields[1], Paths.get( fields[2] ), descriptorRoot ) );
+            }
+        }
+
+        return entries;
+    }
+}
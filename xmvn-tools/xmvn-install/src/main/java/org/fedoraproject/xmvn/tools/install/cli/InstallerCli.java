@@ -16,10 +16,19 @@
 package org.fedoraproject.xmvn.tools.install.cli;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import com.google.inject.Guice;
@@ -44,32 +53,157 @@ public class InstallerCli
 {
     private final Logger logger = LoggerFactory.getLogger( InstallerCli.class );
 
-    private final Installer installer;
+    /**
+     * Provider of installers. Each installation needs its own installer, but all installers share configuration,
+     * resolver and other singleton components.
+     */
+    private final Provider<Installer> installerProvider;
 
     @Inject
-    public InstallerCli( Installer installer )
+    public InstallerCli( Provider<Installer> installerProvider )
     {
-        this.installer = installer;
+        this.installerProvider = installerProvider;
     }
 
-    private int run( InstallerCliRequest cliRequest )
+    private InstallationRequest createRequest( InstallerCliRequest cliRequest, Path planPath, String packageName,
+                                               Path installRoot, Path descriptorRoot )
     {
         InstallationRequest request = new InstallationRequest();
         request.setCheckForUnmatchedRules( !cliRequest.isRelaxed() );
-        request.setBasePackageName( cliRequest.getPackageName() );
-        request.setInstallRoot( Paths.get( cliRequest.getDestDir() ) );
-        request.setInstallationPlan( Paths.get( cliRequest.getPlanPath() ) );
+        request.setBasePackageName( packageName );
+        request.setInstallRoot( installRoot );
+        request.setDescriptorRoot( descriptorRoot );
+        request.setInstallationPlan( planPath );
+        request.setThreadCount( cliRequest.getJobs() );
+        request.setStaged( cliRequest.isStaged() );
+
+        if ( cliRequest.isIncremental() )
+        {
+            // Journal is kept next to installation root, so that it survives removal of installation root
+            Path absoluteRoot = installRoot.toAbsolutePath().normalize();
+            request.setJournalPath( absoluteRoot.resolveSibling( "." + absoluteRoot.getFileName() + "-journal" ) );
+        }
+
+        return request;
+    }
 
+    private boolean install( InstallationRequest request )
+    {
         try
         {
-            installer.install( request );
-            return 0;
+            installerProvider.get().install( request );
+            return true;
         }
-        catch ( ArtifactInstallationException | IOException e )
+        catch ( ArtifactInstallationException | IOException | RuntimeException e )
         {
             logger.error( "Artifact installation failed", e );
+            return false;
+        }
+    }
+
+    private int run( InstallerCliRequest cliRequest )
+    {
+        if ( cliRequest.getBatchManifest() != null )
+            return runBatch( cliRequest );
+
+        InstallationRequest request =
+            createRequest( cliRequest, Paths.get( cliRequest.getPlanPath() ), cliRequest.getPackageName(),
+                           Paths.get( cliRequest.getDestDir() ), null );
+
+        return install( request ) ? 0 : 1;
+    }
+
+    private boolean installBatchEntry( InstallerCliRequest cliRequest, BatchEntry entry )
+    {
+        InstallationRequest request = createRequest( cliRequest, entry.getPlanPath(), entry.getPackageName(),
+                                                     entry.getInstallRoot(), entry.getDescriptorRoot() );
+
+        // Installations are already performed concurrently, so unless requested otherwise each one uses single thread
+        if ( cliRequest.getJobs() == null )
+            request.setThreadCount( 1 );
+
+        logger.info( "Installing {}", entry );
+        long startTime = System.nanoTime();
+        boolean success = install( request );
+        long time = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime );
+
+        if ( success )
+            logger.info( "Installed {} in {} ms", entry, time );
+        else
+            logger.error( "Installation of {} failed after {} ms", entry, time );
+
+        return success;
+    }
+
+    /**
+     * Perform all installations listed in batch manifest in single process. Installations are independent, so up to
+     * given number of them are performed concurrently.
+     * 
+     * @param cliRequest command line request
+     * @return exit code
+     */
+    private int runBatch( InstallerCliRequest cliRequest )
+    {
+        List<BatchEntry> entries;
+        try
+        {
+            entries = BatchEntry.readManifest( Paths.get( cliRequest.getBatchManifest() ) );
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Unable to read batch manifest", e );
+            return 1;
+        }
+
+        Integer batchJobs = cliRequest.getBatchJobs();
+        if ( batchJobs == null )
+            batchJobs = Runtime.getRuntime().availableProcessors();
+        if ( batchJobs < 1 )
+        {
+            logger.error( "Number of batch jobs must be positive, but it is {}", batchJobs );
+            return 1;
+        }
+
+        logger.info( "Performing {} installations, up to {} concurrently", entries.size(), batchJobs );
+        long startTime = System.nanoTime();
+        int failures = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( batchJobs, entries.size() ) ) );
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<>( entries.size() );
+            for ( BatchEntry entry : entries )
+                results.add( executor.submit( ( ) -> installBatchEntry( cliRequest, entry ) ) );
+
+            for ( Future<Boolean> result : results )
+            {
+                try
+                {
+                    if ( !result.get() )
+                        failures++;
+                }
+                catch ( ExecutionException e )
+                {
+                    logger.error( "Artifact installation failed", e.getCause() );
+                    failures++;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            logger.error( "Batch installation was interrupted" );
             return 1;
         }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        long time = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime );
+        logger.info( "{} of {} installations succeeded in {} ms", entries.size() - failures, entries.size(), time );
+
+        return failures == 0 ? 0 : 1;
     }
 
     public static void main( String[] args )
@@ -51,6 +51,21 @@ class InstallerCliRequest
     @Parameter( names = { "-d", "--destination" }, description = "Destination directory" )
     private String destDir = ".xmvn/root";
 
+    @Parameter( names = { "-j", "--jobs" }, description = "Number of threads used for installing artifacts" )
+    private Integer jobs;
+
+    @Parameter( names = { "-i", "--incremental" }, description = "Reuse results of previous installation for unchanged artifacts" )
+    private boolean incremental;
+
+    @Parameter( names = { "-s", "--staged" }, description = "Publish installed files only after all packages are installed" )
+    private boolean staged;
+
+    @Parameter( names = { "-b", "--batch" }, description = "Path to batch manifest listing installations to perform" )
+    private String batchManifest;
+
+    @Parameter( names = { "-J", "--batch-jobs" }, description = "Number of installations performed concurrently in batch mode" )
+    private Integer batchJobs;
+
     @DynamicParameter( names = "-D", description = "Define system property" )
     private Map<String, String> defines = new TreeMap<>();
 
@@ -141,6 +156,56 @@ class InstallerCliRequest
         this.destDir = destDir;
     }
 
+    public Integer getJobs()
+    {
+        return jobs;
+    }
+
+    public void setJobs( Integer jobs )
+    {
+        this.jobs = jobs;
+    }
+
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public void setIncremental( boolean incremental )
+    {
+        this.incremental = incremental;
+    }
+
+    public boolean isStaged()
+    {
+        return staged;
+    }
+
+    public void setStaged( boolean staged )
+    {
+        this.staged = staged;
+    }
+
+    public String getBatchManifest()
+    {
+        return batchManifest;
+    }
+
+    public void setBatchManifest( String batchManifest )
+    {
+        this.batchManifest = batchManifest;
+    }
+
+    public Integer getBatchJobs()
+    {
+        return batchJobs;
+    }
+
+    public void setBatchJobs( Integer batchJobs )
+    {
+        this.batchJobs = batchJobs;
+    }
+
     public Map<String, String> getDefines()
     {
         return defines;
@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Predicate;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -22,5 +24,37 @@ import org.fedoraproject.xmvn.repository.ArtifactContext;
  */
 abstract class BooleanExpression
 {
+    /**
+     * Compiled form of expressions which are always true.
+     */
+    static final Predicate<ArtifactContext> TRUE = context -> true;
+
+    /**
+     * Compiled form of expressions which are always false.
+     */
+    static final Predicate<ArtifactContext> FALSE = context -> false;
+
+    static Predicate<ArtifactContext> constant( boolean value )
+    {
+        return value ? TRUE : FALSE;
+    }
+
+    static boolean isConstant( Predicate<ArtifactContext> predicate )
+    {
+        return predicate == TRUE || predicate == FALSE;
+    }
+
     public abstract boolean getValue( ArtifactContext context );
+
+    /**
+     * Compile this expression into a predicate which can be evaluated without walking expression tree. Subexpressions
+     * which don't depend on evaluation context are folded, and if the whole expression is constant then either
+     * {@link #TRUE} or {@link #FALSE} is returned.
+     * 
+     * @return compiled expression
+     */
+    public Predicate<ArtifactContext> compile()
+    {
+        return this::getValue;
+    }
 }
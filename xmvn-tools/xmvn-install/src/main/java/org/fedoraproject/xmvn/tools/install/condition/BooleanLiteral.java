@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Predicate;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -35,4 +37,10 @@ class BooleanLiteral
     {
         return value;
     }
+
+    @Override
+    public Predicate<ArtifactContext> compile()
+    {
+        return constant( value );
+    }
 }
@@ -15,7 +15,9 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
@@ -49,4 +51,42 @@ abstract class BooleanOperator
     }
 
     protected abstract boolean evaluate( boolean lhs, boolean rhs );
+
+    @Override
+    public Predicate<ArtifactContext> compile()
+    {
+        boolean constantValue = neutralValue;
+        List<Predicate<ArtifactContext>> operands = new ArrayList<>( children.size() );
+
+        for ( BooleanExpression child : children )
+        {
+            Predicate<ArtifactContext> operand = child.compile();
+
+            if ( isConstant( operand ) )
+                constantValue = evaluate( constantValue, operand == TRUE );
+            else
+                operands.add( operand );
+        }
+
+        if ( operands.isEmpty() )
+            return constant( constantValue );
+
+        return compile( constantValue, operands );
+    }
+
+    /**
+     * Combine compiled operands into compiled expression.
+     * 
+     * @param constantValue neutral value of the operator combined with values of all constant operands
+     * @param operands compiled operands which are not constant, in evaluation order (never empty)
+     * @return compiled expression
+     */
+    protected abstract Predicate<ArtifactContext> compile( boolean constantValue,
+                                                           List<Predicate<ArtifactContext>> operands );
+
+    @SuppressWarnings( "unchecked" )
+    protected static Predicate<ArtifactContext>[] toArray( List<Predicate<ArtifactContext>> operands )
+    {
+        return operands.toArray( new Predicate[operands.size()] );
+    }
 }
@@ -17,6 +17,7 @@ package org.fedoraproject.xmvn.tools.install.condition;
 
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.fedoraproject.xmvn.repository.ArtifactContext;
@@ -28,7 +29,7 @@ import org.w3c.dom.Element;
  */
 public class Condition
 {
-    private final BooleanExpression expr;
+    private final Predicate<ArtifactContext> predicate;
 
     private StringExpression parseString( Element dom )
     {
@@ -117,16 +118,18 @@ public class Condition
     {
         if ( dom == null )
         {
-            this.expr = new BooleanLiteral( true );
+            this.predicate = BooleanExpression.TRUE;
         }
         else
         {
-            this.expr = parseBoolean( DomUtils.parseAsWrapper( dom ) );
+            // Condition is evaluated for every artifact path lookup, so it is compiled upfront instead of being
+            // interpreted by walking expression tree each time
+            this.predicate = parseBoolean( DomUtils.parseAsWrapper( dom ) ).compile();
         }
     }
 
     public boolean getValue( ArtifactContext context )
     {
-        return expr.getValue( context );
+        return predicate.test( context );
     }
 }
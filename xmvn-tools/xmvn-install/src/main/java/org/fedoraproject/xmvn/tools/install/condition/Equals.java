@@ -17,8 +17,12 @@ package org.fedoraproject.xmvn.tools.install.condition;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.fedoraproject.xmvn.repository.ArtifactContext;
+import org.fedoraproject.xmvn.tools.install.condition.StringExpression.Constant;
 
 /**
  * @author Mikolaj Izdebski
@@ -54,4 +58,31 @@ class Equals
         return ( lhsValue == null && rhsValue == null )
             || ( lhsValue != null && rhsValue != null && lhsValue.equals( rhsValue ) );
     }
+
+    @Override
+    public Predicate<ArtifactContext> compile()
+    {
+        Function<ArtifactContext, String> lhsFunction = lhs.compile();
+        Function<ArtifactContext, String> rhsFunction = rhs.compile();
+
+        if ( lhsFunction instanceof Constant && rhsFunction instanceof Constant )
+            return constant( Objects.equals( ( (Constant) lhsFunction ).getValue(),
+                                             ( (Constant) rhsFunction ).getValue() ) );
+
+        if ( lhsFunction instanceof Constant )
+            return compare( ( (Constant) lhsFunction ).getValue(), rhsFunction );
+
+        if ( rhsFunction instanceof Constant )
+            return compare( ( (Constant) rhsFunction ).getValue(), lhsFunction );
+
+        return context -> Objects.equals( lhsFunction.apply( context ), rhsFunction.apply( context ) );
+    }
+
+    private static Predicate<ArtifactContext> compare( String value, Function<ArtifactContext, String> function )
+    {
+        if ( value == null )
+            return context -> function.apply( context ) == null;
+
+        return context -> value.equals( function.apply( context ) );
+    }
 }
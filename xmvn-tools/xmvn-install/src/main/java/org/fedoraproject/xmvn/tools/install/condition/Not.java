@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Predicate;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -35,4 +37,15 @@ class Not
     {
         return !rhs.getValue( context );
     }
+
+    @Override
+    public Predicate<ArtifactContext> compile()
+    {
+        Predicate<ArtifactContext> predicate = rhs.compile();
+
+        if ( isConstant( predicate ) )
+            return constant( predicate != TRUE );
+
+        return predicate.negate();
+    }
 }
@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Function;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -28,4 +30,10 @@ class Null
     {
         return null;
     }
+
+    @Override
+    public Function<ArtifactContext, String> compile()
+    {
+        return new Constant( null );
+    }
 }
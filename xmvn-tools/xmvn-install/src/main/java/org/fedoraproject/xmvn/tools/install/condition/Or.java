@@ -16,6 +16,9 @@
 package org.fedoraproject.xmvn.tools.install.condition;
 
 import java.util.List;
+import java.util.function.Predicate;
+
+import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
  * @author Mikolaj Izdebski
@@ -33,4 +36,25 @@ class Or
     {
         return lhs | rhs;
     }
+
+    @Override
+    protected Predicate<ArtifactContext> compile( boolean constantValue, List<Predicate<ArtifactContext>> operands )
+    {
+        if ( constantValue )
+            return TRUE;
+        if ( operands.size() == 1 )
+            return operands.get( 0 );
+
+        Predicate<ArtifactContext>[] array = toArray( operands );
+        return context ->
+        {
+            for ( Predicate<ArtifactContext> operand : array )
+            {
+                if ( operand.test( context ) )
+                    return true;
+            }
+
+            return false;
+        };
+    }
 }
@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Function;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -22,5 +24,41 @@ import org.fedoraproject.xmvn.repository.ArtifactContext;
  */
 abstract class StringExpression
 {
+    /**
+     * Compiled form of string expressions which don't depend on evaluation context.
+     */
+    static final class Constant
+        implements Function<ArtifactContext, String>
+    {
+        private final String value;
+
+        public Constant( String value )
+        {
+            this.value = value;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public String apply( ArtifactContext context )
+        {
+            return value;
+        }
+    }
+
     public abstract String getValue( ArtifactContext context );
+
+    /**
+     * Compile this expression into a function which can be evaluated without walking expression tree. Expressions
+     * which don't depend on evaluation context are compiled into instances of {@link Constant}.
+     * 
+     * @return compiled expression
+     */
+    public Function<ArtifactContext, String> compile()
+    {
+        return this::getValue;
+    }
 }
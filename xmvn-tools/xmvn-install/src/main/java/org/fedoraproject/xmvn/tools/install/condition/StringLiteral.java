@@ -15,6 +15,8 @@
  */
 package org.fedoraproject.xmvn.tools.install.condition;
 
+import java.util.function.Function;
+
 import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
@@ -35,4 +37,10 @@ class StringLiteral
     {
         return value;
     }
+
+    @Override
+    public Function<ArtifactContext, String> compile()
+    {
+        return new Constant( value );
+    }
 }
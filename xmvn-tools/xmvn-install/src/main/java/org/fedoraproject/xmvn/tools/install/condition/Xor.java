@@ -16,6 +16,9 @@
 package org.fedoraproject.xmvn.tools.install.condition;
 
 import java.util.List;
+import java.util.function.Predicate;
+
+import org.fedoraproject.xmvn.repository.ArtifactContext;
 
 /**
  * @author Mikolaj Izdebski
@@ -33,4 +36,24 @@ class Xor
     {
         return lhs ^ rhs;
     }
+
+    @Override
+    protected Predicate<ArtifactContext> compile( boolean constantValue, List<Predicate<ArtifactContext>> operands )
+    {
+        if ( operands.size() == 1 )
+            return constantValue ? operands.get( 0 ).negate() : operands.get( 0 );
+
+        Predicate<ArtifactContext>[] array = toArray( operands );
+        return context ->
+        {
+            boolean value = constantValue;
+
+            for ( Predicate<ArtifactContext> operand : array )
+            {
+                value ^= operand.test( context );
+            }
+
+            return value;
+        };
+    }
 }
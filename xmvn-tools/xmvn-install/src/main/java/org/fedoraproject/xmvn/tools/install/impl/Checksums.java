@@ -0,0 +1,101 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes SHA-256 checksums of files and byte arrays, encoded as lower-case hexadecimal strings.
+ * 
+ * @author Mikolaj Izdebski
+ */
+final class Checksums
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Checksums()
+    {
+    }
+
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new RuntimeException( "Digest algorithm " + DIGEST_ALGORITHM + " is not available", e );
+        }
+    }
+
+    private static String toHex( byte[] digest )
+    {
+        char[] hex = new char[2 * digest.length];
+        for ( int i = 0; i < digest.length; i++ )
+        {
+            hex[2 * i] = HEX_DIGITS[( digest[i] >> 4 ) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String( hex );
+    }
+
+    /**
+     * Compute checksum of given bytes.
+     * 
+     * @param content bytes to compute checksum of
+     * @return hex-encoded checksum
+     */
+    public static String checksum( byte[] content )
+    {
+        return toHex( createDigest().digest( content ) );
+    }
+
+    /**
+     * Compute checksum of contents of given file.
+     * 
+     * @param file path to file
+     * @return hex-encoded checksum of file contents
+     * @throws IOException if file can't be read
+     */
+    public static String checksum( Path file )
+        throws IOException
+    {
+        MessageDigest md = createDigest();
+        ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+
+        try (FileChannel channel = FileChannel.open( file ))
+        {
+            while ( channel.read( buffer ) >= 0 )
+            {
+                buffer.flip();
+                md.update( buffer );
+                buffer.clear();
+            }
+        }
+
+        return toHex( md.digest() );
+    }
+}
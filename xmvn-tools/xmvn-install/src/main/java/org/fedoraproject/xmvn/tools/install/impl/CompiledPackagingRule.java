@@ -0,0 +1,155 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fedoraproject.xmvn.config.Artifact;
+import org.fedoraproject.xmvn.config.PackagingRule;
+import org.fedoraproject.xmvn.utils.GlobUtils;
+
+import com.google.common.base.Strings;
+
+/**
+ * Packaging rule with artifact glob compiled into regular expression patterns.
+ * <p>
+ * Patterns are compiled once, when the rule is created, so that the rule can be matched against many artifacts
+ * cheaply. Compiled rules are immutable and can be shared between threads.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class CompiledPackagingRule
+{
+    /**
+     * Characters which have special meaning in glob patterns.
+     */
+    private static final String GLOB_CHARS = "\\{}?*";
+
+    private final int position;
+
+    private final PackagingRule rule;
+
+    private final String literalGroupId;
+
+    private final Pattern stereotypePattern;
+
+    private final Pattern groupIdPattern;
+
+    private final Pattern artifactIdPattern;
+
+    private final Pattern extensionPattern;
+
+    private final Pattern classifierPattern;
+
+    private final Pattern versionPattern;
+
+    /**
+     * Compile packaging rule.
+     * 
+     * @param position position of the rule in the list of packaging rules
+     * @param rule packaging rule to compile
+     */
+    public CompiledPackagingRule( int position, PackagingRule rule )
+    {
+        this.position = position;
+        this.rule = rule;
+
+        Artifact glob = rule.getArtifactGlob();
+        stereotypePattern = GlobUtils.glob2pattern( glob.getStereotype() );
+        groupIdPattern = GlobUtils.glob2pattern( glob.getGroupId() );
+        artifactIdPattern = GlobUtils.glob2pattern( glob.getArtifactId() );
+        extensionPattern = GlobUtils.glob2pattern( glob.getExtension() );
+        classifierPattern = GlobUtils.glob2pattern( glob.getClassifier() );
+        versionPattern = GlobUtils.glob2pattern( glob.getVersion() );
+
+        literalGroupId = isLiteral( glob.getGroupId() ) ? glob.getGroupId() : null;
+    }
+
+    private static boolean isLiteral( String glob )
+    {
+        if ( Strings.isNullOrEmpty( glob ) )
+            return false;
+
+        for ( char ch : glob.toCharArray() )
+            if ( GLOB_CHARS.indexOf( ch ) >= 0 )
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Get position of this rule in the list of packaging rules it was compiled from.
+     * 
+     * @return rule position
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Get raw packaging rule from which this rule was compiled.
+     * 
+     * @return raw packaging rule
+     */
+    public PackagingRule getRule()
+    {
+        return rule;
+    }
+
+    /**
+     * Get groupId matched by this rule, if the rule matches single groupId only.
+     * 
+     * @return the only groupId matched by this rule, or {@code null} if groupId glob contains wildcards or is empty
+     */
+    public String getLiteralGroupId()
+    {
+        return literalGroupId;
+    }
+
+    /**
+     * Match this rule against given artifact.
+     * 
+     * @param artifact artifact to match
+     * @return list of successful matchers, which can be used for expanding backreferences, or {@code null} if the rule
+     *         doesn't match given artifact
+     */
+    public List<Matcher> match( Artifact artifact )
+    {
+        List<Matcher> matchers = new ArrayList<>( 3 );
+        if ( stereotypePattern != null )
+            matchers.add( stereotypePattern.matcher( artifact.getStereotype() ) );
+        if ( groupIdPattern != null )
+            matchers.add( groupIdPattern.matcher( artifact.getGroupId() ) );
+        if ( artifactIdPattern != null )
+            matchers.add( artifactIdPattern.matcher( artifact.getArtifactId() ) );
+        if ( extensionPattern != null )
+            matchers.add( extensionPattern.matcher( artifact.getExtension() ) );
+        if ( classifierPattern != null )
+            matchers.add( classifierPattern.matcher( artifact.getClassifier() ) );
+        if ( versionPattern != null )
+            matchers.add( versionPattern.matcher( artifact.getVersion() ) );
+
+        for ( Matcher matcher : matchers )
+            if ( !matcher.matches() )
+                return null;
+
+        return matchers;
+    }
+}
@@ -15,13 +15,15 @@
  */
 package org.fedoraproject.xmvn.tools.install.impl;
 
-import static org.fedoraproject.xmvn.tools.install.JarUtils.containsNativeCode;
+import static org.fedoraproject.xmvn.tools.install.JarUtils.analyzeJar;
 import static org.fedoraproject.xmvn.tools.install.JarUtils.injectManifest;
-import static org.fedoraproject.xmvn.tools.install.JarUtils.usesNativeCode;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -45,6 +47,7 @@ import org.fedoraproject.xmvn.tools.install.ArtifactInstallationException;
 import org.fedoraproject.xmvn.tools.install.ArtifactInstaller;
 import org.fedoraproject.xmvn.tools.install.Directory;
 import org.fedoraproject.xmvn.tools.install.File;
+import org.fedoraproject.xmvn.tools.install.JarAnalysis;
 import org.fedoraproject.xmvn.tools.install.JavaPackage;
 import org.fedoraproject.xmvn.tools.install.RegularFile;
 import org.fedoraproject.xmvn.tools.install.SymbolicLink;
@@ -63,19 +66,73 @@ public class DefaultArtifactInstaller
     @Inject
     private RepositoryConfigurator repositoryConfigurator;
 
+    /**
+     * Artifacts which were already prepared for installation, but not installed yet.
+     */
+    private final Set<ArtifactMetadata> preparedArtifacts =
+        Collections.synchronizedSet( Collections.newSetFromMap( new IdentityHashMap<>() ) );
+
     @Override
-    public void install( JavaPackage targetPackage, ArtifactMetadata am, PackagingRule rule, String basePackageName )
+    public void prepare( ArtifactMetadata am )
         throws ArtifactInstallationException
     {
         Artifact artifact = am.toArtifact();
 
-        // Handle native JARs/WARs etc
         Path artifactPath = Paths.get( am.getPath() );
-        if ( usesNativeCode( artifactPath ) || containsNativeCode( artifactPath ) )
+        JarAnalysis analysis = analyzeJar( artifactPath );
+
+        // Handle native JARs/WARs etc
+        if ( analysis.usesNativeCode() || analysis.containsNativeCode() )
             am.getProperties().setProperty( "native", "true" );
 
         // Inject Javapackages manifests
-        injectManifest( artifactPath, artifact );
+        if ( analysis.getManifest() != null )
+            injectManifest( artifactPath, artifact );
+
+        // Checksum is computed after manifest injection, while file contents are still in page cache, so that
+        // installation can copy the file in kernel space instead of passing its contents through a digest
+        am.setChecksum( checksum( artifactPath ) );
+
+        preparedArtifacts.add( am );
+    }
+
+    @Override
+    public void reusePreparation( ArtifactMetadata am )
+        throws ArtifactInstallationException
+    {
+        // Manifest was already injected and native code properties were restored by caller
+        if ( am.getChecksum() == null )
+            am.setChecksum( checksum( Paths.get( am.getPath() ) ) );
+
+        preparedArtifacts.add( am );
+    }
+
+    private static String checksum( Path artifactPath )
+        throws ArtifactInstallationException
+    {
+        try
+        {
+            return Checksums.checksum( artifactPath );
+        }
+        catch ( IOException e )
+        {
+            throw new ArtifactInstallationException( "Unable to compute checksum of artifact file " + artifactPath, e );
+        }
+    }
+
+    @Override
+    public void install( JavaPackage targetPackage, ArtifactMetadata am, PackagingRule rule, String basePackageName )
+        throws ArtifactInstallationException
+    {
+        // Callers are not required to prepare artifacts before installing them
+        if ( !preparedArtifacts.remove( am ) )
+        {
+            prepare( am );
+            preparedArtifacts.remove( am );
+        }
+
+        Artifact artifact = am.toArtifact();
+        Path artifactPath = Paths.get( am.getPath() );
 
         Map<String, String> properties = new LinkedHashMap<>();
         for ( String name : am.getProperties().stringPropertyNames() )
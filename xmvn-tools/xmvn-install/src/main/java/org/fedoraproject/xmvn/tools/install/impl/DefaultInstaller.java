@@ -21,15 +21,22 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.inject.Singleton;
 import javax.xml.stream.XMLStreamException;
 
 import org.fedoraproject.xmvn.artifact.Artifact;
@@ -48,6 +55,7 @@ import org.fedoraproject.xmvn.resolver.ResolutionResult;
 import org.fedoraproject.xmvn.resolver.Resolver;
 import org.fedoraproject.xmvn.tools.install.ArtifactInstallationException;
 import org.fedoraproject.xmvn.tools.install.ArtifactInstaller;
+import org.fedoraproject.xmvn.tools.install.FileCopier;
 import org.fedoraproject.xmvn.tools.install.InstallationRequest;
 import org.fedoraproject.xmvn.tools.install.InstallationResult;
 import org.fedoraproject.xmvn.tools.install.Installer;
@@ -57,11 +65,24 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 
+/**
+ * Default implementation of {@link Installer}.
+ * <p>
+ * Installer keeps state of installation in progress, so it is not a singleton. Independent installations can be
+ * performed concurrently, each using its own installer instance.
+ * 
+ * @author Mikolaj Izdebski
+ */
 @Named
-@Singleton
 public class DefaultInstaller
     implements Installer
 {
+    /**
+     * Number of threads used for checking artifact files during validation of installation plan, when installation
+     * itself is sequential.
+     */
+    private static final int VALIDATION_THREADS = 4;
+
     private final Logger logger = LoggerFactory.getLogger( DefaultInstaller.class );
 
     private final Set<ArtifactState> reactor = new LinkedHashSet<>();
@@ -79,6 +100,184 @@ public class DefaultInstaller
 
     private PackageRegistry packageRegistry;
 
+    private PackagingRuleIndex packagingRuleIndex;
+
+    /**
+     * Journal of artifacts prepared by previous installation, or {@code null} if journal is not used.
+     */
+    private InstallationJournal journal;
+
+    /**
+     * Executor used for running independent installation tasks concurrently, or {@code null} if installation is
+     * sequential.
+     */
+    private ExecutorService executor;
+
+    /**
+     * File copier used for installing contents of regular files into buildroot.
+     */
+    private FileCopier fileCopier;
+
+    /**
+     * Deduplicator of regular files installed into the same package.
+     */
+    private FileDeduplicator fileDeduplicator;
+
+    /**
+     * Installation task which is run for every item of some collection.
+     * 
+     * @param <T> type of items
+     */
+    @FunctionalInterface
+    private interface Task<T>
+    {
+        void run( T item )
+            throws ArtifactInstallationException, IOException;
+    }
+
+    private static Thread newThread( Runnable runnable )
+    {
+        Thread thread = new Thread( runnable );
+        thread.setName( DefaultInstaller.class.getCanonicalName() + ".worker" );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+    private static int getThreadCount( InstallationRequest request, InstallerSettings settings )
+        throws ArtifactInstallationException
+    {
+        // Installation is sequential unless parallel installation was explicitly requested
+        int threadCount = request.getThreadCount() != null ? request.getThreadCount() : settings.getInstallerThreads();
+        if ( threadCount == 0 )
+            return 1;
+        if ( threadCount < 0 )
+            throw new ArtifactInstallationException( "Number of installer threads must not be negative, but it is "
+                + threadCount );
+        return threadCount;
+    }
+
+    /**
+     * Read and validate installation plan. Validation only inspects artifact files, so it is safe to run it
+     * concurrently even when installation itself is sequential. If there is no installer executor then a small
+     * temporary one is used.
+     */
+    private InstallationPlan readInstallationPlan( InstallationRequest request )
+        throws ArtifactInstallationException
+    {
+        if ( executor != null )
+            return new InstallationPlan( request.getInstallationPlan(), executor );
+
+        ExecutorService validationExecutor =
+            Executors.newFixedThreadPool( VALIDATION_THREADS, DefaultInstaller::newThread );
+        try
+        {
+            return new InstallationPlan( request.getInstallationPlan(), validationExecutor );
+        }
+        finally
+        {
+            validationExecutor.shutdown();
+        }
+    }
+
+    private static FileCopier createFileCopier( InstallerSettings settings )
+        throws ArtifactInstallationException
+    {
+        try
+        {
+            return new FileCopier( FileCopier.Mode.fromString( settings.getCopyMode() ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new ArtifactInstallationException( "Invalid file copy mode: " + settings.getCopyMode() );
+        }
+    }
+
+    private static FileDeduplicator createFileDeduplicator( InstallerSettings settings )
+        throws ArtifactInstallationException
+    {
+        try
+        {
+            return new FileDeduplicator( FileDeduplicator.Mode.fromString( settings.getDeduplication() ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new ArtifactInstallationException( "Invalid file deduplication mode: "
+                + settings.getDeduplication() );
+        }
+    }
+
+    /**
+     * Run task for each item in given collection. In parallel mode tasks are run concurrently, otherwise they are run
+     * sequentially in iteration order. Tasks must not depend on each other, so that results don't depend on the mode.
+     * <p>
+     * If any task fails then exception thrown by the first failed task (in iteration order) is rethrown, but only after
+     * all tasks have finished.
+     * 
+     * @param items collection of items
+     * @param task task to run for each item
+     * @throws ArtifactInstallationException
+     * @throws IOException
+     */
+    private <T> void forEach( Collection<T> items, Task<T> task )
+        throws ArtifactInstallationException, IOException
+    {
+        if ( executor == null || items.size() < 2 )
+        {
+            for ( T item : items )
+                task.run( item );
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>( items.size() );
+        for ( T item : items )
+        {
+            futures.add( executor.submit( ( ) ->
+            {
+                task.run( item );
+                return null;
+            } ) );
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for ( Future<?> future : futures )
+        {
+            while ( true )
+            {
+                try
+                {
+                    future.get();
+                    break;
+                }
+                catch ( ExecutionException e )
+                {
+                    if ( failure == null )
+                        failure = e.getCause();
+                    break;
+                }
+                catch ( InterruptedException e )
+                {
+                    // Tasks modify installation state, so they must all finish before returning
+                    interrupted = true;
+                }
+            }
+        }
+
+        if ( interrupted )
+            Thread.currentThread().interrupt();
+
+        if ( failure instanceof ArtifactInstallationException )
+            throw (ArtifactInstallationException) failure;
+        if ( failure instanceof IOException )
+            throw (IOException) failure;
+        if ( failure instanceof RuntimeException )
+            throw (RuntimeException) failure;
+        if ( failure instanceof Error )
+            throw (Error) failure;
+        if ( failure != null )
+            throw new RuntimeException( failure );
+    }
+
     /**
      * Build initial reactor state from installation plan.
      * 
@@ -108,9 +307,9 @@ public class DefaultInstaller
     {
         Artifact artifact = artifactState.getArtifact();
 
-        PackagingRule rule = new EffectivePackagingRule( configuration.getArtifactManagement(), artifact.getGroupId(),
-                                                         artifact.getArtifactId(), artifact.getExtension(),
-                                                         artifact.getClassifier(), artifact.getVersion() );
+        PackagingRule rule = packagingRuleIndex.getEffectiveRule( artifact.getGroupId(), artifact.getArtifactId(),
+                                                                  artifact.getExtension(), artifact.getClassifier(),
+                                                                  artifact.getVersion() );
 
         artifactState.setPackagingRule( rule );
 
@@ -204,6 +403,58 @@ public class DefaultInstaller
                                                                           artifactState.getMetadata().getProperties() ) );
     }
 
+    private void prepareArtifact( ArtifactState artifactState )
+        throws ArtifactInstallationException, IOException
+    {
+        if ( artifactState.getTargetPackage() == null )
+            return;
+
+        ArtifactInstaller installer = artifactState.getInstaller();
+        ArtifactMetadata metadata = artifactState.getMetadata();
+
+        if ( journal == null )
+        {
+            installer.prepare( metadata );
+            return;
+        }
+
+        String key = artifactState.getArtifact().toString();
+        Path artifactPath = Paths.get( metadata.getPath() );
+        String fileHash = Checksums.checksum( artifactPath );
+        String ruleHash = InstallationJournal.hashRule( artifactState.getPackagingRule() );
+
+        Properties preparedProperties = journal.getPreparedProperties( key, artifactPath, fileHash, ruleHash );
+        if ( preparedProperties != null )
+        {
+            logger.debug( "Artifact {} is unchanged since previous installation, reusing its preparation",
+                          artifactState.getArtifact() );
+            metadata.getProperties().putAll( preparedProperties );
+            metadata.setChecksum( fileHash );
+            installer.reusePreparation( metadata );
+        }
+        else
+        {
+            Properties originalProperties = new Properties();
+            originalProperties.putAll( metadata.getProperties() );
+            metadata.setChecksum( null );
+            installer.prepare( metadata );
+
+            preparedProperties = new Properties();
+            for ( String name : metadata.getProperties().stringPropertyNames() )
+            {
+                String value = metadata.getProperties().getProperty( name );
+                if ( !value.equals( originalProperties.getProperty( name ) ) )
+                    preparedProperties.setProperty( name, value );
+            }
+
+            // Preparation can modify artifact file, checksum computed by installer after preparation is reused if
+            // available, so that the file doesn't need to be read again
+            fileHash = metadata.getChecksum() != null ? metadata.getChecksum() : Checksums.checksum( artifactPath );
+        }
+
+        journal.record( key, artifactPath, fileHash, ruleHash, preparedProperties );
+    }
+
     private void installArtifact( ArtifactState artifactState, String basePackageName )
         throws ArtifactInstallationException
     {
@@ -222,6 +473,7 @@ public class DefaultInstaller
      * Try to resolve dependencies of all installed artifacts.
      */
     private void resolveArtifactDependencies()
+        throws ArtifactInstallationException, IOException
     {
         Map<Artifact, ArtifactMetadata> installedArtifacts = new LinkedHashMap<>();
 
@@ -243,19 +495,63 @@ public class DefaultInstaller
             }
         }
 
+        List<Dependency> dependencies = new ArrayList<>();
+
         for ( JavaPackage pkg : packageRegistry.getPackages() )
         {
             for ( ArtifactMetadata artifactMetadata : pkg.getMetadata().getArtifacts() )
             {
-                for ( Dependency dependency : artifactMetadata.getDependencies() )
+                dependencies.addAll( artifactMetadata.getDependencies() );
+            }
+        }
+
+        // Many artifacts have the same dependencies, so each distinct artifact is resolved by system resolver only
+        // once. Artifacts that need to be resolved are collected from all dependencies and passed to system resolver
+        // in a single batch, which it can resolve concurrently, then dependencies are resolved again using batch
+        // results. Default version of dependency is needed only if requested version couldn't be resolved, so it is
+        // resolved in the next batch, if at all.
+        Map<Artifact, ResolutionResult> resolutions = new HashMap<>();
+        List<Dependency> unresolvedDependencies = dependencies;
+        while ( !unresolvedDependencies.isEmpty() )
+        {
+            Set<Artifact> pendingArtifacts = new LinkedHashSet<>();
+            List<Dependency> pendingDependencies = new ArrayList<>();
+
+            for ( Dependency dependency : unresolvedDependencies )
+            {
+                Artifact pendingArtifact = resolveDependency( dependency, installedArtifacts, resolutions );
+                if ( pendingArtifact != null )
                 {
-                    resolveDependency( dependency, installedArtifacts );
+                    pendingArtifacts.add( pendingArtifact );
+                    pendingDependencies.add( dependency );
                 }
             }
+
+            List<ResolutionRequest> requests = new ArrayList<>();
+            for ( Artifact artifact : pendingArtifacts )
+                requests.add( new ResolutionRequest( artifact ) );
+
+            Iterator<ResolutionResult> results = resolver.resolveAll( requests ).iterator();
+            for ( Artifact artifact : pendingArtifacts )
+                resolutions.put( artifact, results.next() );
+            unresolvedDependencies = pendingDependencies;
         }
+
+        logger.debug( "Resolved {} dependencies using {} system artifact resolutions", dependencies.size(),
+                      resolutions.size() );
     }
 
-    private void resolveDependency( Dependency dependency, Map<Artifact, ArtifactMetadata> installedArtifacts )
+    /**
+     * Try to resolve dependency, either from installed artifacts or from results of system artifact resolution.
+     * 
+     * @param dependency dependency to resolve
+     * @param installedArtifacts artifacts installed by this installation
+     * @param resolutions results of system artifact resolution obtained so far
+     * @return artifact which needs to be resolved by system resolver before dependency can be resolved, or
+     *         {@code null} if dependency was resolved (or it was determined that it can't be resolved)
+     */
+    private Artifact resolveDependency( Dependency dependency, Map<Artifact, ArtifactMetadata> installedArtifacts,
+                                        Map<Artifact, ResolutionResult> resolutions )
     {
         for ( String version : Arrays.asList( dependency.getRequestedVersion(), Artifact.DEFAULT_VERSION ) )
         {
@@ -267,22 +563,84 @@ public class DefaultInstaller
             {
                 dependency.setResolvedVersion( version );
                 dependency.setNamespace( resolvedMetadata.getNamespace() );
-                return;
+                return null;
             }
 
             // Next try system artifact resolver
-            ResolutionRequest request = new ResolutionRequest( dependencyArtifact );
-            ResolutionResult result = resolver.resolve( request );
+            ResolutionResult result = resolutions.get( dependencyArtifact );
+            if ( result == null )
+                return dependencyArtifact;
             if ( result.getArtifactPath() != null )
             {
                 dependency.setResolvedVersion( result.getCompatVersion() );
                 dependency.setNamespace( result.getNamespace() );
-                return;
+                return null;
             }
         }
 
         dependency.setResolvedVersion( "UNKNOWN" );
         dependency.setNamespace( "UNKNOWN" );
+        return null;
+    }
+
+    private void installPackage( JavaPackage pkg, Path installRoot )
+        throws IOException
+    {
+        logger.debug( "Installing {}", pkg );
+        pkg.install( installRoot, fileCopier );
+        fileDeduplicator.deduplicate( pkg, installRoot );
+    }
+
+    private void writeDescriptor( JavaPackage pkg, InstallationRequest request )
+        throws IOException
+    {
+        Path mfiles = Paths.get( Strings.isNullOrEmpty( pkg.getId() ) ? ".mfiles" : ".mfiles-" + pkg.getId() );
+        if ( request.getDescriptorRoot() != null )
+            mfiles = request.getDescriptorRoot().resolve( mfiles );
+
+        logger.debug( "Writing file descriptor {}", mfiles );
+        pkg.writeDescriptor( mfiles );
+    }
+
+    /**
+     * Install all packages into installation root. In staged mode packages are first installed into staging tree,
+     * which is then published into installation root, so that installation root is not modified if installation of
+     * any package fails.
+     * 
+     * @param request installation request
+     * @throws ArtifactInstallationException
+     * @throws IOException
+     */
+    private void installPackages( InstallationRequest request )
+        throws ArtifactInstallationException, IOException
+    {
+        if ( !request.isStaged() )
+        {
+            logger.debug( "Installing packages into buildroot: {}", request.getInstallRoot() );
+            forEach( packageRegistry.getPackages(), pkg -> installPackage( pkg, request.getInstallRoot() ) );
+            return;
+        }
+
+        StagedInstallation stage = new StagedInstallation( request.getInstallRoot() );
+        try
+        {
+            logger.debug( "Installing packages into staging tree: {}", stage.getStagingRoot() );
+            forEach( packageRegistry.getPackages(), pkg -> installPackage( pkg, stage.getStagingRoot() ) );
+
+            logger.debug( "Publishing staging tree into buildroot: {}", request.getInstallRoot() );
+            stage.publish();
+        }
+        finally
+        {
+            try
+            {
+                stage.discard();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Unable to remove staging tree {}", stage.getStagingRoot(), e );
+            }
+        }
     }
 
     @Override
@@ -292,67 +650,97 @@ public class DefaultInstaller
         configuration = configurator.getConfiguration();
         InstallerSettings settings = configuration.getInstallerSettings();
         packageRegistry = new PackageRegistry( settings, request.getBasePackageName() );
+        fileCopier = createFileCopier( settings );
+        journal = request.getJournalPath() != null ? new InstallationJournal( request.getJournalPath() ) : null;
+        fileDeduplicator = createFileDeduplicator( settings );
+        logger.debug( "Using file copy mode {}", fileCopier.getMode() );
+        logger.debug( "Using file deduplication mode {}", fileDeduplicator.getMode() );
+
+        // Phases which depend on order of artifacts (assignment of target packages, adding files and metadata to
+        // packages) are always run sequentially in reactor order. Only independent per-artifact tasks are run
+        // concurrently, so installation results are the same regardless of number of threads.
+        int threadCount = getThreadCount( request, settings );
+        logger.debug( "Using {} installer threads", threadCount );
+        if ( threadCount > 1 )
+            executor = Executors.newFixedThreadPool( threadCount, DefaultInstaller::newThread );
+
+        try
+        {
+            logger.debug( "Reading installation plan" );
+            InstallationPlan installationPlan = readInstallationPlan( request );
+            buildReactor( installationPlan );
 
-        logger.debug( "Reading installation plan" );
-        InstallationPlan installationPlan = new InstallationPlan( request.getInstallationPlan() );
-        buildReactor( installationPlan );
+            logger.debug( "Creating effective packaging rules for each artifact" );
+            packagingRuleIndex = new PackagingRuleIndex( configuration.getArtifactManagement() );
+            forEach( reactor, this::constructEffectivePackagingRule );
 
-        logger.debug( "Creating effective packaging rules for each artifact" );
-        for ( ArtifactState artifactState : reactor )
-            constructEffectivePackagingRule( artifactState );
+            logger.debug( "Choosing target package for each artifact" );
+            for ( ArtifactState artifactState : reactor )
+            {
+                assignTargetPackage( artifactState );
+                logger.debug( "Artifact {} will be installed into {}", artifactState.getArtifact(),
+                              artifactState.getTargetPackage() );
+            }
 
-        logger.debug( "Choosing target package for each artifact" );
-        for ( ArtifactState artifactState : reactor )
-        {
-            assignTargetPackage( artifactState );
-            logger.debug( "Artifact {} will be installed into {}", artifactState.getArtifact(),
-                          artifactState.getTargetPackage() );
-        }
+            logger.debug( "Generating skipped artifact metadata" );
+            generateSkippedArtifactMetadata();
 
-        logger.debug( "Generating skipped artifact metadata" );
-        generateSkippedArtifactMetadata();
+            logger.debug( "Assigning installer for each installable artifact" );
+            for ( ArtifactState artifactState : reactor )
+                assignArtifactInstaller( artifactState );
 
-        logger.debug( "Assigning installer for each installable artifact" );
-        for ( ArtifactState artifactState : reactor )
-            assignArtifactInstaller( artifactState );
+            logger.debug( "Preparing artifacts for installation" );
+            forEach( reactor, this::prepareArtifact );
 
-        logger.debug( "Installing artifacts" );
-        for ( ArtifactState artifactState : reactor )
-        {
-            if ( logger.isDebugEnabled() )
+            logger.debug( "Installing artifacts" );
+            for ( ArtifactState artifactState : reactor )
             {
-                if ( artifactState.getInstaller() != null )
-                    logger.debug( "Installing {} using {}", artifactState.getArtifact(),
-                                  artifactState.getInstaller().getClass().getName() );
-            }
+                if ( logger.isDebugEnabled() )
+                {
+                    if ( artifactState.getInstaller() != null )
+                        logger.debug( "Installing {} using {}", artifactState.getArtifact(),
+                                      artifactState.getInstaller().getClass().getName() );
+                }
 
-            installArtifact( artifactState, request.getBasePackageName() );
-        }
+                installArtifact( artifactState, request.getBasePackageName() );
+            }
 
-        logger.debug( "Running post-installation hooks" );
-        Set<ArtifactInstaller> installers = new LinkedHashSet<>();
-        for ( ArtifactState artifactState : reactor )
-        {
-            ArtifactInstaller installer = artifactState.getInstaller();
-            if ( installer != null && installers.add( installer ) )
-                installer.postInstallation();
-        }
+            logger.debug( "Running post-installation hooks" );
+            Set<ArtifactInstaller> installers = new LinkedHashSet<>();
+            for ( ArtifactState artifactState : reactor )
+            {
+                ArtifactInstaller installer = artifactState.getInstaller();
+                if ( installer != null && installers.add( installer ) )
+                    installer.postInstallation();
+            }
 
-        logger.debug( "Resolving artifact dependencies..." );
-        resolveArtifactDependencies();
+            logger.debug( "Resolving artifact dependencies..." );
+            resolveArtifactDependencies();
 
-        logger.debug( "Installing packages into buildroot: {}", request.getInstallRoot() );
-        for ( JavaPackage pkg : packageRegistry.getPackages() )
-        {
-            logger.debug( "Installing {}", pkg );
-            pkg.install( request.getInstallRoot() );
+            // Each package is installed into its own files, only directories can be shared between packages
+            installPackages( request );
+            logger.debug( "{} bytes copied, {} bytes cloned, {} bytes linked", fileCopier.getBytesCopied(),
+                          fileCopier.getBytesCloned(), fileCopier.getBytesLinked() );
+            if ( fileDeduplicator.getFilesReplaced() > 0 )
+                logger.info( "Replaced {} duplicate files with links, saving {} bytes",
+                             fileDeduplicator.getFilesReplaced(), fileDeduplicator.getBytesSaved() );
 
-            Path mfiles = Paths.get( Strings.isNullOrEmpty( pkg.getId() ) ? ".mfiles" : ".mfiles-" + pkg.getId() );
-            if ( request.getDescriptorRoot() != null )
-                mfiles = request.getDescriptorRoot().resolve( mfiles );
+            // Descriptors are written only after all packages were successfully installed
+            logger.debug( "Writing file descriptors" );
+            forEach( packageRegistry.getPackages(), pkg -> writeDescriptor( pkg, request ) );
 
-            logger.debug( "Writing file descriptor {}", mfiles );
-            pkg.writeDescriptor( mfiles );
+            if ( journal != null )
+            {
+                logger.debug( "Writing installation journal {}", request.getJournalPath() );
+                journal.store();
+            }
+        }
+        finally
+        {
+            if ( executor != null )
+                executor.shutdown();
+            executor = null;
+            journal = null;
         }
 
         logger.info( "Installation successful" );
@@ -15,14 +15,14 @@
  */
 package org.fedoraproject.xmvn.tools.install.impl;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.fedoraproject.xmvn.config.Artifact;
 import org.fedoraproject.xmvn.config.PackagingRule;
-import org.fedoraproject.xmvn.utils.GlobUtils;
 
 import com.google.common.base.Strings;
 
@@ -46,6 +46,11 @@ class EffectivePackagingRule
 {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Patterns matching backreferences ({@code @1}, {@code @2} and so on), indexed by group number.
+     */
+    private static final Map<Integer, Pattern> BACKREFERENCE_PATTERNS = new ConcurrentHashMap<>();
+
     private static String expandBackreferences( List<Matcher> matchers, String result )
     {
         int group = 1;
@@ -74,7 +79,7 @@ class EffectivePackagingRule
         {
             for ( int i = 1; i <= matcher.groupCount(); i++, group++ )
             {
-                Pattern pattern = Pattern.compile( "@" + group );
+                Pattern pattern = BACKREFERENCE_PATTERNS.computeIfAbsent( group, n -> Pattern.compile( "@" + n ) );
                 String replacement = matcher.group( i );
                 target.setStereotype( pattern.matcher( target.getStereotype() ).replaceAll( replacement ) );
                 target.setGroupId( pattern.matcher( target.getGroupId() ).replaceAll( replacement ) );
@@ -88,34 +93,14 @@ class EffectivePackagingRule
         return target;
     }
 
-    private void applyRule( PackagingRule rule )
+    private void applyRule( CompiledPackagingRule compiledRule )
     {
-        Artifact glob = rule.getArtifactGlob();
-        Pattern stereotypePattern = GlobUtils.glob2pattern( glob.getStereotype() );
-        Pattern groupIdPattern = GlobUtils.glob2pattern( glob.getGroupId() );
-        Pattern artifactIdPattern = GlobUtils.glob2pattern( glob.getArtifactId() );
-        Pattern extensionPattern = GlobUtils.glob2pattern( glob.getExtension() );
-        Pattern classifierPattern = GlobUtils.glob2pattern( glob.getClassifier() );
-        Pattern versionPattern = GlobUtils.glob2pattern( glob.getVersion() );
-
         Artifact artifact = getArtifactGlob();
-        List<Matcher> matchers = new ArrayList<>( 3 );
-        if ( stereotypePattern != null )
-            matchers.add( stereotypePattern.matcher( artifact.getStereotype() ) );
-        if ( groupIdPattern != null )
-            matchers.add( groupIdPattern.matcher( artifact.getGroupId() ) );
-        if ( artifactIdPattern != null )
-            matchers.add( artifactIdPattern.matcher( artifact.getArtifactId() ) );
-        if ( extensionPattern != null )
-            matchers.add( extensionPattern.matcher( artifact.getExtension() ) );
-        if ( classifierPattern != null )
-            matchers.add( classifierPattern.matcher( artifact.getClassifier() ) );
-        if ( versionPattern != null )
-            matchers.add( versionPattern.matcher( artifact.getVersion() ) );
+        List<Matcher> matchers = compiledRule.match( artifact );
+        if ( matchers == null )
+            return;
 
-        for ( Matcher matcher : matchers )
-            if ( !matcher.matches() )
-                return;
+        PackagingRule rule = compiledRule.getRule();
         rule.setMatched( true );
 
         String targetPackage = rule.getTargetPackage();
@@ -170,6 +155,24 @@ class EffectivePackagingRule
      */
     public EffectivePackagingRule( List<PackagingRule> artifactManagement, String groupId, String artifactId,
                                    String extension, String classifier, String version )
+    {
+        this( new PackagingRuleIndex( artifactManagement ).getCandidateRules( groupId ), groupId, artifactId,
+              extension, classifier, version );
+    }
+
+    /**
+     * Create effective packaging rule for given artifact from precompiled packaging rules.
+     * 
+     * @param rules compiled packaging rules that are foundation of newly constructed effective rule, in configuration
+     *            order
+     * @param groupId groupId of artifact for which effective rule is to be created
+     * @param artifactId artifactId of artifact for which effective rule is to be created
+     * @param extension extension of artifact for which effective rule is to be created
+     * @param classifier classifier of artifact for which effective rule is to be created
+     * @param version version of artifact for which effective rule is to be created
+     */
+    EffectivePackagingRule( Iterable<CompiledPackagingRule> rules, String groupId, String artifactId,
+                            String extension, String classifier, String version )
     {
         Artifact artifact = new Artifact();
         artifact.setGroupId( groupId );
@@ -181,7 +184,7 @@ class EffectivePackagingRule
         setOptional( false );
         setMatched( true );
 
-        for ( PackagingRule rule : artifactManagement )
+        for ( CompiledPackagingRule rule : rules )
         {
             applyRule( rule );
         }
@@ -0,0 +1,211 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.fedoraproject.xmvn.tools.install.File;
+import org.fedoraproject.xmvn.tools.install.Package;
+import org.fedoraproject.xmvn.tools.install.RegularFile;
+import org.fedoraproject.xmvn.tools.install.SymbolicLink;
+
+/**
+ * Replaces byte-identical regular files installed into the same package with links to single copy of the file.
+ * <p>
+ * Deduplication is done after package files are installed. Only files of the same size and access mode are hashed,
+ * which in typical packages leaves very few files to be read back. The first file of each set of identical files (in
+ * package order) is kept intact and the remaining files are replaced either with relative symbolic links (which are
+ * also reflected in package descriptor) or with hard links to it.
+ * <p>
+ * This class is thread-safe, different packages can be deduplicated concurrently.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class FileDeduplicator
+{
+    private final Logger logger = LoggerFactory.getLogger( FileDeduplicator.class );
+
+    /**
+     * Method of replacing duplicate files.
+     */
+    public enum Mode
+    {
+        /**
+         * Leave duplicate files intact.
+         */
+        NONE,
+
+        /**
+         * Replace duplicate files with relative symbolic links.
+         */
+        SYMLINK,
+
+        /**
+         * Replace duplicate files with hard links.
+         */
+        HARDLINK;
+
+        /**
+         * Parse deduplication mode from its name, as used in configuration.
+         * 
+         * @param name name of deduplication mode (case-insensitive), or {@code null}
+         * @return deduplication mode, {@link #NONE} if name is {@code null} or empty
+         * @throws IllegalArgumentException if there is no deduplication mode with given name
+         */
+        public static Mode fromString( String name )
+        {
+            if ( name == null || name.isEmpty() )
+                return NONE;
+
+            return valueOf( name.toUpperCase( Locale.ROOT ) );
+        }
+    }
+
+    private final Mode mode;
+
+    private final AtomicLong filesReplaced = new AtomicLong();
+
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public FileDeduplicator( Mode mode )
+    {
+        this.mode = mode;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Get number of files which were replaced with links.
+     * 
+     * @return number of replaced files
+     */
+    public long getFilesReplaced()
+    {
+        return filesReplaced.get();
+    }
+
+    /**
+     * Get total size of files which were replaced with links.
+     * 
+     * @return number of bytes saved
+     */
+    public long getBytesSaved()
+    {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Deduplicate regular files of given package, which must have already been installed into given root.
+     * 
+     * @param pkg installed package
+     * @param installRoot root into which package was installed
+     * @throws IOException if installed files can't be read or replaced
+     */
+    public void deduplicate( Package pkg, Path installRoot )
+        throws IOException
+    {
+        if ( mode == Mode.NONE )
+            return;
+
+        installRoot = installRoot.toAbsolutePath();
+
+        // Only files with the same size and access mode can be replaced by each other, so other files are not hashed
+        Map<List<Object>, List<File>> candidates = new LinkedHashMap<>();
+        for ( File file : pkg.getFiles() )
+        {
+            if ( !( file instanceof RegularFile ) )
+                continue;
+
+            Path path = installRoot.resolve( file.getTargetPath() );
+            BasicFileAttributes attributes =
+                Files.readAttributes( path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+            if ( !attributes.isRegularFile() || attributes.size() == 0 )
+                continue;
+
+            List<Object> key = Arrays.asList( attributes.size(), file.getAccessMode() );
+            candidates.computeIfAbsent( key, k -> new ArrayList<>() ).add( file );
+        }
+
+        for ( List<File> group : candidates.values() )
+        {
+            if ( group.size() < 2 )
+                continue;
+
+            Map<String, File> originals = new HashMap<>();
+            for ( File file : group )
+            {
+                Path path = installRoot.resolve( file.getTargetPath() );
+                File original = originals.putIfAbsent( Checksums.checksum( path ), file );
+                if ( original != null )
+                    replace( pkg, file, original, installRoot );
+            }
+        }
+    }
+
+    private void replace( Package pkg, File file, File original, Path installRoot )
+        throws IOException
+    {
+        Path path = installRoot.resolve( file.getTargetPath() );
+        Path originalPath = installRoot.resolve( original.getTargetPath() );
+        long size = Files.size( path );
+
+        if ( mode == Mode.HARDLINK )
+        {
+            // Files can already be hard links to the same source file
+            if ( Files.isSameFile( path, originalPath ) )
+                return;
+
+            // Link is created under temporary name first, so that the file is never missing
+            Path link = path.resolveSibling( "." + path.getFileName() + ".xmvn-dedup" );
+            Files.deleteIfExists( link );
+            Files.createLink( link, originalPath );
+            Files.move( link, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        else
+        {
+            Path referencedPath = Paths.get( "/" ).resolve( original.getTargetPath() );
+            File symlink = new SymbolicLink( file.getTargetPath(), referencedPath );
+            Files.delete( path );
+            symlink.install( installRoot );
+            pkg.replaceFile( file, symlink );
+        }
+
+        logger.debug( "Replaced duplicate file {} with {} to {}", file.getTargetPath(),
+                      mode == Mode.HARDLINK ? "hard link" : "symbolic link", original.getTargetPath() );
+        filesReplaced.incrementAndGet();
+        bytesSaved.addAndGet( size );
+    }
+}
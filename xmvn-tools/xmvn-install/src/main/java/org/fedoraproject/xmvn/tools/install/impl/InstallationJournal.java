@@ -0,0 +1,216 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fedoraproject.xmvn.config.Configuration;
+import org.fedoraproject.xmvn.config.PackagingRule;
+import org.fedoraproject.xmvn.config.io.stax.ConfigurationStaxWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of artifacts prepared for installation by previous installation.
+ * <p>
+ * For each artifact journal records path and content hash of artifact file after it was prepared for installation,
+ * hash of effective packaging rule and artifact properties set during preparation. If artifact file and packaging rule
+ * didn't change since previous installation then results of previous preparation can be reused instead of preparing
+ * artifact again.
+ * <p>
+ * Journal contains entries for artifacts of the latest installation only. Entries read from journal file are never
+ * modified, new entries are written to journal file by {@link #store()}. This class is thread-safe.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class InstallationJournal
+{
+    /**
+     * Version of journal format. Journals written in different format, or by installer preparing artifacts in different
+     * way, are discarded.
+     */
+    private static final String JOURNAL_VERSION = "1";
+
+    private static final String VERSION_KEY = "xmvn.install.journal.version";
+
+    private final Logger logger = LoggerFactory.getLogger( InstallationJournal.class );
+
+    private final Path journalFile;
+
+    private final Properties entries;
+
+    private final Properties newEntries = new Properties();
+
+    /**
+     * Create installation journal, reading entries recorded by previous installation.
+     * 
+     * @param journalFile path to journal file, which doesn't need to exist
+     */
+    public InstallationJournal( Path journalFile )
+    {
+        this.journalFile = journalFile;
+        entries = readJournalFile();
+    }
+
+    private Properties readJournalFile()
+    {
+        Properties properties = new Properties();
+
+        if ( Files.isRegularFile( journalFile ) )
+        {
+            try (InputStream is = Files.newInputStream( journalFile ))
+            {
+                properties.load( is );
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Unable to read installation journal {}", journalFile, e );
+                properties.clear();
+            }
+        }
+
+        if ( !JOURNAL_VERSION.equals( properties.getProperty( VERSION_KEY ) ) )
+            properties.clear();
+
+        return properties;
+    }
+
+    /**
+     * Compute hash of packaging rule, which changes whenever any part of the rule changes.
+     * 
+     * @param rule packaging rule
+     * @return hex-encoded hash of packaging rule
+     */
+    public static String hashRule( PackagingRule rule )
+    {
+        try (StringWriter buffer = new StringWriter())
+        {
+            Configuration configuration = new Configuration();
+            configuration.addArtifactManagement( rule );
+            new ConfigurationStaxWriter().write( buffer, configuration );
+
+            return Checksums.checksum( buffer.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch ( IOException | XMLStreamException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Get artifact properties set during previous preparation of artifact, if that preparation can be reused.
+     * 
+     * @param key key identifying artifact
+     * @param artifactPath path to artifact file
+     * @param fileHash current content hash of artifact file
+     * @param ruleHash hash of current effective packaging rule of artifact
+     * @return properties set during previous preparation, or {@code null} if artifact needs to be prepared again
+     */
+    public Properties getPreparedProperties( String key, Path artifactPath, String fileHash, String ruleHash )
+    {
+        String value = entries.getProperty( key );
+        if ( value == null )
+            return null;
+
+        String[] fields = value.split( "\t", -1 );
+        if ( fields.length < 3 || fields.length % 2 == 0 || !fields[0].equals( artifactPath.toString() )
+            || !fields[1].equals( fileHash ) || !fields[2].equals( ruleHash ) )
+            return null;
+
+        Properties properties = new Properties();
+        for ( int i = 3; i < fields.length; i += 2 )
+            properties.setProperty( fields[i], fields[i + 1] );
+
+        return properties;
+    }
+
+    /**
+     * Record preparation of artifact, so that it can be reused by next installation.
+     * 
+     * @param key key identifying artifact
+     * @param artifactPath path to artifact file
+     * @param fileHash content hash of artifact file after it was prepared
+     * @param ruleHash hash of effective packaging rule of artifact
+     * @param preparedProperties artifact properties set during preparation
+     */
+    public void record( String key, Path artifactPath, String fileHash, String ruleHash, Properties preparedProperties )
+    {
+        List<String> fields = new ArrayList<>();
+        fields.add( artifactPath.toString() );
+        fields.add( fileHash );
+        fields.add( ruleHash );
+        for ( String name : preparedProperties.stringPropertyNames() )
+        {
+            fields.add( name );
+            fields.add( preparedProperties.getProperty( name ) );
+        }
+
+        // Fields are separated by tabs, entries which can't be represented are not recorded
+        if ( fields.stream().anyMatch( field -> field.indexOf( '\t' ) >= 0 ) )
+            return;
+
+        newEntries.setProperty( key, String.join( "\t", fields ) );
+    }
+
+    /**
+     * Replace journal file with entries recorded during current installation.
+     */
+    public void store()
+    {
+        Path tempFile = null;
+        try
+        {
+            Properties properties = new Properties();
+            properties.putAll( newEntries );
+            properties.setProperty( VERSION_KEY, JOURNAL_VERSION );
+
+            Path parent = journalFile.toAbsolutePath().getParent();
+            Files.createDirectories( parent );
+            tempFile = Files.createTempFile( parent, "journal-", ".tmp" );
+            try (OutputStream os = Files.newOutputStream( tempFile ))
+            {
+                properties.store( os, "XMvn installation journal" );
+            }
+
+            Files.move( tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Unable to write installation journal {}", journalFile, e );
+            try
+            {
+                if ( tempFile != null )
+                    Files.deleteIfExists( tempFile );
+            }
+            catch ( IOException e1 )
+            {
+                // Ignore
+            }
+        }
+    }
+}
@@ -15,12 +15,22 @@
  */
 package org.fedoraproject.xmvn.tools.install.impl;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -43,6 +53,22 @@ public class InstallationPlan
 
     public InstallationPlan( Path planPath )
         throws ArtifactInstallationException
+    {
+        this( planPath, null );
+    }
+
+    /**
+     * Read and validate installation plan.
+     * <p>
+     * Artifact files are checked while the rest of the plan is being validated, using given executor. All problems
+     * found in the plan are reported together.
+     * 
+     * @param planPath path to installation plan
+     * @param executor executor used for checking artifact files, or {@code null} to check them sequentially
+     * @throws ArtifactInstallationException if installation plan can't be read or is not valid
+     */
+    public InstallationPlan( Path planPath, Executor executor )
+        throws ArtifactInstallationException
     {
         if ( !Files.exists( planPath ) )
         {
@@ -53,7 +79,7 @@ public class InstallationPlan
             try (InputStream stream = Files.newInputStream( planPath ))
             {
                 metadata = new MetadataStaxReader().read( stream );
-                validate( metadata );
+                validate( metadata, executor );
             }
             catch ( IOException | XMLStreamException e )
             {
@@ -67,76 +93,176 @@ public class InstallationPlan
         return metadata.getArtifacts();
     }
 
+    /**
+     * Check whether artifact path points to a readable regular file.
+     * <p>
+     * Existence and type of file are determined with a single {@code stat} call. Readability can't be reliably
+     * determined from file attributes (for example because of ACLs), so it is checked separately, but only for regular
+     * files.
+     * 
+     * @param artifactPath absolute path to artifact file
+     * @return error message, or {@code null} if artifact file is valid
+     */
+    private static String checkArtifactFile( Path artifactPath )
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes( artifactPath, BasicFileAttributes.class );
+        }
+        catch ( NoSuchFileException e )
+        {
+            return "Artifact path points to a non-existent file: " + artifactPath;
+        }
+        catch ( IOException e )
+        {
+            return "Artifact path points to a non-existent file: " + artifactPath + " (" + e + ")";
+        }
+
+        if ( !attributes.isRegularFile() )
+            return "Artifact path points to a non-regular file: " + artifactPath;
+        if ( !Files.isReadable( artifactPath ) )
+            return "Artifact path points to a non-readable file: " + artifactPath;
+
+        return null;
+    }
+
+    /**
+     * Describe artifact in validation error messages, so that errors can be attributed to artifacts even if some of
+     * their coordinates are missing.
+     */
+    private static String describeArtifact( int index, ArtifactMetadata artifactMetadata )
+    {
+        return "Artifact #" + ( index + 1 ) + " (" + Strings.nullToEmpty( artifactMetadata.getGroupId() ) + ":"
+            + Strings.nullToEmpty( artifactMetadata.getArtifactId() ) + ":"
+            + Strings.nullToEmpty( artifactMetadata.getVersion() ) + ")";
+    }
+
     /**
      * Make sure that installation plan sets all required fields and that it doesn't contain unwanted data.
+     * <p>
+     * Validation doesn't stop at the first problem found. All problems are reported in a single exception, in the same
+     * order as artifacts appear in the plan, each prefixed with description of the artifact it refers to.
      * 
-     * @param installationPlan the installation plan
+     * @param metadata the installation plan
+     * @param executor executor used for checking artifact files, or {@code null}
      * @throws ArtifactInstallationException
      */
-    private static void validate( PackageMetadata metadata )
+    private static void validate( PackageMetadata metadata, Executor executor )
         throws ArtifactInstallationException
     {
+        // Errors are kept in plan order, results of file checks are placed among them when the checks are started
+        List<Future<String>> errors = new ArrayList<>();
+
         if ( !Strings.isNullOrEmpty( metadata.getUuid() ) )
-            throw new ArtifactInstallationException( "Installation plan must not set UUID" );
+            errors.add( completedFuture( "Installation plan must not set UUID" ) );
 
-        for ( ArtifactMetadata artifactMetadata : metadata.getArtifacts() )
+        List<ArtifactMetadata> artifacts = metadata.getArtifacts();
+        for ( int i = 0; i < artifacts.size(); i++ )
         {
+            ArtifactMetadata artifactMetadata = artifacts.get( i );
+            String prefix = describeArtifact( i, artifactMetadata ) + ": ";
+            Consumer<String> artifactError = error -> errors.add( completedFuture( prefix + error ) );
+
             if ( Strings.isNullOrEmpty( artifactMetadata.getGroupId() ) )
-                throw new ArtifactInstallationException( "Artifact metadata must have group ID set" );
+                artifactError.accept( "Artifact metadata must have group ID set" );
             if ( Strings.isNullOrEmpty( artifactMetadata.getArtifactId() ) )
-                throw new ArtifactInstallationException( "Artifact metadata must have artifact ID set" );
+                artifactError.accept( "Artifact metadata must have artifact ID set" );
             if ( Strings.isNullOrEmpty( artifactMetadata.getVersion() ) )
-                throw new ArtifactInstallationException( "Artifact metadata must have version set" );
+                artifactError.accept( "Artifact metadata must have version set" );
+
             if ( Strings.isNullOrEmpty( artifactMetadata.getPath() ) )
-                throw new ArtifactInstallationException( "Artifact metadata must have path set" );
-
-            Path artifactPath = Paths.get( artifactMetadata.getPath() );
-            if ( !artifactPath.isAbsolute() )
-                throw new ArtifactInstallationException( "Artifact path is not absolute: " + artifactPath );
-            if ( !Files.exists( artifactPath ) )
-                throw new ArtifactInstallationException( "Artifact path points to a non-existent file: "
-                    + artifactPath );
-            if ( !Files.isRegularFile( artifactPath ) )
-                throw new ArtifactInstallationException( "Artifact path points to a non-regular file: "
-                    + artifactPath );
-            if ( !Files.isReadable( artifactPath ) )
-                throw new ArtifactInstallationException( "Artifact path points to a non-readable file: "
-                    + artifactPath );
+            {
+                artifactError.accept( "Artifact metadata must have path set" );
+            }
+            else
+            {
+                Path artifactPath = Paths.get( artifactMetadata.getPath() );
+                if ( !artifactPath.isAbsolute() )
+                {
+                    artifactError.accept( "Artifact path is not absolute: " + artifactPath );
+                }
+                else
+                {
+                    // File checks are slow on network file systems, so they are run while validation continues
+                    FutureTask<String> fileCheck = new FutureTask<>( ( ) ->
+                    {
+                        String error = checkArtifactFile( artifactPath );
+                        return error != null ? prefix + error : null;
+                    } );
+                    if ( executor != null )
+                        executor.execute( fileCheck );
+                    else
+                        fileCheck.run();
+                    errors.add( fileCheck );
+                }
+            }
 
             if ( !Strings.isNullOrEmpty( artifactMetadata.getUuid() ) )
-                throw new ArtifactInstallationException( "Installation plan must not define artifact UUID" );
+                artifactError.accept( "Installation plan must not define artifact UUID" );
             if ( !Strings.isNullOrEmpty( artifactMetadata.getNamespace() ) )
-                throw new ArtifactInstallationException( "Installation plan must not define artifact namespace" );
+                artifactError.accept( "Installation plan must not define artifact namespace" );
             if ( artifactMetadata.getCompatVersions().iterator().hasNext() )
-                throw new ArtifactInstallationException( "Installation plan must not define compat versions" );
+                artifactError.accept( "Installation plan must not define compat versions" );
             if ( artifactMetadata.getAliases().iterator().hasNext() )
-                throw new ArtifactInstallationException( "Installation plan must not define aliases" );
+                artifactError.accept( "Installation plan must not define aliases" );
 
             for ( Dependency dependency : artifactMetadata.getDependencies() )
             {
                 if ( Strings.isNullOrEmpty( dependency.getGroupId() ) )
-                    throw new ArtifactInstallationException( "Artifact dependency must have group ID set" );
+                    artifactError.accept( "Artifact dependency must have group ID set" );
                 if ( Strings.isNullOrEmpty( dependency.getArtifactId() ) )
-                    throw new ArtifactInstallationException( "Artifact dependency must have artifact ID set" );
+                    artifactError.accept( "Artifact dependency must have artifact ID set" );
                 if ( Strings.isNullOrEmpty( dependency.getRequestedVersion() ) )
-                    throw new ArtifactInstallationException( "Artifact dependency must have requested version set" );
+                    artifactError.accept( "Artifact dependency must have requested version set" );
 
                 if ( !dependency.getResolvedVersion().equals( Artifact.DEFAULT_VERSION ) )
-                    throw new ArtifactInstallationException( "Installation plan must not define resolved dependency version" );
+                    artifactError.accept( "Installation plan must not define resolved dependency version" );
                 if ( !Strings.isNullOrEmpty( dependency.getNamespace() ) )
-                    throw new ArtifactInstallationException( "Installation plan must not define dependency namespace" );
+                    artifactError.accept( "Installation plan must not define dependency namespace" );
 
                 for ( DependencyExclusion dependencyExclusion : dependency.getExclusions() )
                 {
                     if ( Strings.isNullOrEmpty( dependencyExclusion.getGroupId() ) )
-                        throw new ArtifactInstallationException( "Dependency exclusion must have group ID set" );
+                        artifactError.accept( "Dependency exclusion must have group ID set" );
                     if ( Strings.isNullOrEmpty( dependencyExclusion.getArtifactId() ) )
-                        throw new ArtifactInstallationException( "Dependency exclusion must have artifact ID set" );
+                        artifactError.accept( "Dependency exclusion must have artifact ID set" );
                 }
             }
         }
 
         if ( metadata.getSkippedArtifacts().iterator().hasNext() )
-            throw new ArtifactInstallationException( "Installation plan must not include skipped artifacts" );
+            errors.add( completedFuture( "Installation plan must not include skipped artifacts" ) );
+
+        List<String> messages = new ArrayList<>();
+        for ( Future<String> error : errors )
+        {
+            try
+            {
+                String message = error.get();
+                if ( message != null )
+                    messages.add( message );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new ArtifactInstallationException( "Interrupted while validating installation plan", e );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new ArtifactInstallationException( "Unable to validate installation plan", e.getCause() );
+            }
+        }
+
+        if ( messages.size() == 1 )
+            throw new ArtifactInstallationException( messages.get( 0 ) );
+
+        if ( !messages.isEmpty() )
+        {
+            StringBuilder message = new StringBuilder( "Installation plan is not valid:" );
+            for ( String error : messages )
+                message.append( System.lineSeparator() ).append( "  " ).append( error );
+            throw new ArtifactInstallationException( message.toString() );
+        }
     }
-}
\ No newline at end of file
+}
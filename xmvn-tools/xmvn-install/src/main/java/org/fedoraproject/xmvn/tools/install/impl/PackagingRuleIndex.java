@@ -0,0 +1,119 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fedoraproject.xmvn.config.PackagingRule;
+
+/**
+ * Index of compiled packaging rules, used for creating effective packaging rules of many artifacts.
+ * <p>
+ * Rules whose groupId glob is a literal string are bucketed by groupId, so only rules which can possibly match given
+ * groupId are tried for each artifact. Candidate rules are always tried in the same order as they appear in
+ * configuration, so effective rules are the same as if all rules were tried.
+ * <p>
+ * Effective packaging rules are memoized per artifact coordinates. Memoized rules are shared, so they must not be
+ * modified by callers. This class is thread-safe.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class PackagingRuleIndex
+{
+    private final List<CompiledPackagingRule> wildcardRules = new ArrayList<>();
+
+    private final Map<String, List<CompiledPackagingRule>> literalRules = new HashMap<>();
+
+    private final Map<List<String>, EffectivePackagingRule> effectiveRules = new ConcurrentHashMap<>();
+
+    /**
+     * Compile packaging rules and create index of them.
+     * 
+     * @param artifactManagement list of raw packaging rules
+     */
+    public PackagingRuleIndex( List<PackagingRule> artifactManagement )
+    {
+        int position = 0;
+        for ( PackagingRule rule : artifactManagement )
+        {
+            CompiledPackagingRule compiledRule = new CompiledPackagingRule( position++, rule );
+            String groupId = compiledRule.getLiteralGroupId();
+
+            if ( groupId != null )
+                literalRules.computeIfAbsent( groupId, x -> new ArrayList<>() ).add( compiledRule );
+            else
+                wildcardRules.add( compiledRule );
+        }
+    }
+
+    /**
+     * Get rules which can possibly match artifacts with given groupId.
+     * 
+     * @param groupId artifact groupId
+     * @return list of candidate rules, in configuration order
+     */
+    public List<CompiledPackagingRule> getCandidateRules( String groupId )
+    {
+        List<CompiledPackagingRule> literal = literalRules.getOrDefault( groupId, Collections.emptyList() );
+        if ( literal.isEmpty() )
+            return wildcardRules;
+        if ( wildcardRules.isEmpty() )
+            return literal;
+
+        // Both lists are sorted by position, merge them
+        List<CompiledPackagingRule> candidates = new ArrayList<>( literal.size() + wildcardRules.size() );
+        int i = 0;
+        int j = 0;
+        while ( i < literal.size() && j < wildcardRules.size() )
+        {
+            if ( literal.get( i ).getPosition() < wildcardRules.get( j ).getPosition() )
+                candidates.add( literal.get( i++ ) );
+            else
+                candidates.add( wildcardRules.get( j++ ) );
+        }
+        candidates.addAll( literal.subList( i, literal.size() ) );
+        candidates.addAll( wildcardRules.subList( j, wildcardRules.size() ) );
+
+        return candidates;
+    }
+
+    /**
+     * Get effective packaging rule for given artifact.
+     * 
+     * @param groupId groupId of artifact
+     * @param artifactId artifactId of artifact
+     * @param extension extension of artifact
+     * @param classifier classifier of artifact
+     * @param version version of artifact
+     * @return effective packaging rule (shared, must not be modified)
+     */
+    public EffectivePackagingRule getEffectiveRule( String groupId, String artifactId, String extension,
+                                                    String classifier, String version )
+    {
+        List<String> coordinates = Arrays.asList( groupId, artifactId, extension, classifier, version );
+
+        return effectiveRules.computeIfAbsent( coordinates,
+                                               x -> new EffectivePackagingRule( getCandidateRules( groupId ),
+                                                                                groupId, artifactId, extension,
+                                                                                classifier, version ) );
+    }
+}
@@ -0,0 +1,190 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staging tree into which packages are installed before they are published into installation root.
+ * <p>
+ * Staging tree is created next to installation root, so that it is located on the same file system and can be
+ * published by renaming whole directories into installation root. Files and directories which don't exist in
+ * installation root yet are moved there atomically, together with all their contents. Directories which already exist
+ * are merged recursively.
+ * <p>
+ * Before anything is published, staging tree is checked for conflicts with existing files. If installation fails
+ * before publishing then installation root is left untouched.
+ * 
+ * @author Mikolaj Izdebski
+ */
+class StagedInstallation
+{
+    private final Logger logger = LoggerFactory.getLogger( StagedInstallation.class );
+
+    private final Path installRoot;
+
+    private final Path stagingRoot;
+
+    /**
+     * Create an empty staging tree for given installation root.
+     * 
+     * @param installRoot installation root into which staging tree will be published
+     * @throws IOException if staging tree can't be created
+     */
+    public StagedInstallation( Path installRoot )
+        throws IOException
+    {
+        this.installRoot = installRoot.toAbsolutePath().normalize();
+
+        Path parent = this.installRoot.getParent();
+        Files.createDirectories( parent );
+        stagingRoot = Files.createTempDirectory( parent, "." + this.installRoot.getFileName() + "-staging-" );
+    }
+
+    /**
+     * Get root of staging tree, into which packages should be installed.
+     * 
+     * @return path to staging root
+     */
+    public Path getStagingRoot()
+    {
+        return stagingRoot;
+    }
+
+    /**
+     * Publish contents of staging tree into installation root and remove staging tree.
+     * 
+     * @throws IOException if any staged file conflicts with existing file or if publishing fails
+     */
+    public void publish()
+        throws IOException
+    {
+        Files.createDirectories( installRoot );
+
+        logger.debug( "Publishing staging tree {} into {}", stagingRoot, installRoot );
+        checkConflicts( stagingRoot, installRoot );
+        merge( stagingRoot, installRoot );
+        discard();
+    }
+
+    /**
+     * Remove staging tree together with all its contents.
+     * 
+     * @throws IOException if staging tree can't be removed
+     */
+    public void discard()
+        throws IOException
+    {
+        if ( !Files.exists( stagingRoot, LinkOption.NOFOLLOW_LINKS ) )
+            return;
+
+        Files.walkFileTree( stagingRoot, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+                throws IOException
+            {
+                Files.delete( file );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( Path dir, IOException e )
+                throws IOException
+            {
+                if ( e != null )
+                    throw e;
+                Files.delete( dir );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private static boolean isMerged( Path source, Path target )
+    {
+        return Files.isDirectory( source, LinkOption.NOFOLLOW_LINKS )
+            && Files.isDirectory( target, LinkOption.NOFOLLOW_LINKS );
+    }
+
+    private static void checkConflicts( Path sourceDir, Path targetDir )
+        throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( sourceDir ))
+        {
+            for ( Path source : stream )
+            {
+                Path target = targetDir.resolve( source.getFileName().toString() );
+
+                if ( isMerged( source, target ) )
+                    checkConflicts( source, target );
+                else if ( Files.exists( target, LinkOption.NOFOLLOW_LINKS ) )
+                    throw new FileAlreadyExistsException( target.toString() );
+            }
+        }
+    }
+
+    private static void merge( Path sourceDir, Path targetDir )
+        throws IOException
+    {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( sourceDir ))
+        {
+            for ( Path source : stream )
+            {
+                Path target = targetDir.resolve( source.getFileName().toString() );
+
+                if ( isMerged( source, target ) )
+                    merge( source, target );
+                else
+                    move( source, target );
+            }
+        }
+    }
+
+    private static void move( Path source, Path target )
+        throws IOException
+    {
+        try
+        {
+            Files.move( source, target, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException e )
+        {
+            // Installation root is a mount point, so staging tree is on different file system
+            if ( Files.isDirectory( source, LinkOption.NOFOLLOW_LINKS ) )
+            {
+                Files.copy( source, target, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS );
+                merge( source, target );
+            }
+            else
+            {
+                Files.move( source, target, LinkOption.NOFOLLOW_LINKS );
+            }
+        }
+    }
+}
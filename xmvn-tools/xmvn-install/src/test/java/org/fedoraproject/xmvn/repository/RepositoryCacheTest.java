@@ -0,0 +1,236 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.fedoraproject.xmvn.artifact.Artifact;
+import org.fedoraproject.xmvn.artifact.DefaultArtifact;
+import org.fedoraproject.xmvn.config.Configuration;
+import org.fedoraproject.xmvn.config.Configurator;
+import org.fedoraproject.xmvn.repository.impl.CompoundRepositoryFactory;
+import org.fedoraproject.xmvn.repository.impl.DefaultRepositoryConfigurator;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class RepositoryCacheTest
+{
+    private Configuration configuration;
+
+    private RepositoryConfigurator repoConfigurator;
+
+    private final AtomicInteger instanceCount = new AtomicInteger();
+
+    private final AtomicInteger lookupCount = new AtomicInteger();
+
+    private class CountingRepository
+        implements Repository
+    {
+        private final Path root;
+
+        public CountingRepository( Path root )
+        {
+            this.root = root;
+        }
+
+        @Override
+        public Path getPrimaryArtifactPath( Artifact artifact, ArtifactContext context, String pattern )
+        {
+            lookupCount.incrementAndGet();
+            return root != null ? root.resolve( artifact.getArtifactId() ) : null;
+        }
+
+        @Override
+        public Set<Path> getRootPaths()
+        {
+            return root != null ? Collections.singleton( root ) : Collections.emptySet();
+        }
+
+        @Override
+        public String getNamespace()
+        {
+            return "";
+        }
+    }
+
+    private class CountingRepositoryFactory
+        implements RepositoryFactory
+    {
+        @Override
+        public Repository getInstance( Element filter, Properties properties, Element configuration )
+        {
+            return getInstance( filter, properties, configuration, "" );
+        }
+
+        @Override
+        public Repository getInstance( Element filter, Properties properties, Element configuration,
+                                       String namespace )
+        {
+            instanceCount.incrementAndGet();
+            String root = properties.getProperty( "root" );
+            return new CountingRepository( root != null ? Paths.get( root ) : null );
+        }
+    }
+
+    private org.fedoraproject.xmvn.config.Repository addRepository( String id, String type )
+    {
+        org.fedoraproject.xmvn.config.Repository repository = new org.fedoraproject.xmvn.config.Repository();
+        repository.setId( id );
+        repository.setType( type );
+        configuration.addRepository( repository );
+        return repository;
+    }
+
+    private void addCompoundRepository( String id, String... slaves )
+        throws Exception
+    {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element configurationXml = document.createElement( "configuration" );
+        Element repositories = document.createElement( "repositories" );
+        configurationXml.appendChild( repositories );
+        for ( String slave : slaves )
+        {
+            Element repository = document.createElement( "repository" );
+            repository.setTextContent( slave );
+            repositories.appendChild( repository );
+        }
+
+        addRepository( id, "compound" ).setConfiguration( configurationXml );
+    }
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        configuration = new Configuration();
+        addRepository( "empty", "counting" );
+        addRepository( "jar", "counting" ).addProperty( "root", "usr/share/java" );
+        addCompoundRepository( "install", "empty", "jar" );
+        addCompoundRepository( "install-raw", "empty", "jar" );
+
+        Configurator configurator = new Configurator()
+        {
+            @Override
+            public Configuration getDefaultConfiguration()
+            {
+                return configuration;
+            }
+
+            @Override
+            public Configuration getConfiguration()
+            {
+                return configuration;
+            }
+
+            @Override
+            public void dumpConfiguration()
+            {
+            }
+        };
+
+        Map<String, RepositoryFactory> factories = new HashMap<>();
+        repoConfigurator = new DefaultRepositoryConfigurator( configurator, factories );
+        factories.put( "counting", new CountingRepositoryFactory() );
+        factories.put( "compound", new CompoundRepositoryFactory( repoConfigurator ) );
+    }
+
+    /**
+     * Test if repositories are configured only once and shared by compound repositories.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSharedRepositories()
+        throws Exception
+    {
+        Repository install = repoConfigurator.configureRepository( "install" );
+        assertSame( install, repoConfigurator.configureRepository( "install" ) );
+        assertEquals( 2, instanceCount.get() );
+
+        Repository installRaw = repoConfigurator.configureRepository( "install-raw" );
+        assertNotSame( install, installRaw );
+        assertSame( repoConfigurator.configureRepository( "jar" ), repoConfigurator.configureRepository( "jar" ) );
+        assertEquals( 2, instanceCount.get() );
+    }
+
+    /**
+     * Test if repositories are configured again when configuration changes.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConfigurationSnapshot()
+        throws Exception
+    {
+        Repository install = repoConfigurator.configureRepository( "install" );
+
+        Configuration newConfiguration = new Configuration();
+        newConfiguration.setRepositories( configuration.getRepositories() );
+        configuration = newConfiguration;
+
+        Repository newInstall = repoConfigurator.configureRepository( "install" );
+        assertNotSame( install, newInstall );
+        assertSame( newInstall, repoConfigurator.configureRepository( "install" ) );
+        assertEquals( 4, instanceCount.get() );
+    }
+
+    /**
+     * Test if compound repositories memoize artifact path lookups and root paths.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLookupMemoization()
+        throws Exception
+    {
+        Repository install = repoConfigurator.configureRepository( "install" );
+        Artifact artifact = new DefaultArtifact( "foo", "bar" );
+        ArtifactContext context = new ArtifactContext( artifact );
+
+        assertEquals( Paths.get( "usr/share/java/bar" ), install.getPrimaryArtifactPath( artifact, context, "x" ) );
+        assertEquals( 2, lookupCount.get() );
+        assertEquals( Paths.get( "usr/share/java/bar" ), install.getPrimaryArtifactPath( artifact, context, "x" ) );
+        assertEquals( 2, lookupCount.get() );
+        install.getPrimaryArtifactPath( artifact, context, "y" );
+        assertEquals( 4, lookupCount.get() );
+
+        Repository empty = repoConfigurator.configureRepository( "empty" );
+        assertNull( empty.getPrimaryArtifactPath( artifact, context, "x" ) );
+
+        assertEquals( Collections.singleton( Paths.get( "usr/share/java" ) ), install.getRootPaths() );
+        assertSame( install.getRootPaths(), install.getRootPaths() );
+    }
+}
@@ -40,11 +40,17 @@ public abstract class AbstractFileTest
 
     protected Path performInstallation()
         throws Exception
+    {
+        return performInstallation( new FileCopier() );
+    }
+
+    protected Path performInstallation( FileCopier copier )
+        throws Exception
     {
         try
         {
             for ( File file : files )
-                file.install( installRoot );
+                file.install( installRoot, copier );
 
             for ( File file : files )
                 descriptors.add( file.getDescriptor() );
@@ -27,6 +27,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -132,6 +133,13 @@ public class ArtifactInstallerTest
         assertEquals( "ns", actualArtifact.getNamespace() );
         assertNotNull( actualArtifact.getUuid() );
 
+        // Checksum must match artifact file with injected manifest
+        StringBuilder expectedChecksum = new StringBuilder();
+        Path installedJar = Paths.get( "target/test-temp-resources/example.jar" );
+        for ( byte b : MessageDigest.getInstance( "SHA-256" ).digest( Files.readAllBytes( installedJar ) ) )
+            expectedChecksum.append( String.format( "%02x", b & 0xFF ) );
+        assertEquals( expectedChecksum.toString(), actualArtifact.getChecksum() );
+
         assertEquals( 2, pkg.getFiles().size() );
         Iterator<File> iterator = pkg.getFiles().iterator();
         File file = iterator.next();
@@ -16,12 +16,16 @@
 package org.fedoraproject.xmvn.tools.install;
 
 import static org.fedoraproject.xmvn.tools.install.InstallationPlanLoader.createInstallationPlan;
+import static org.fedoraproject.xmvn.tools.install.InstallationPlanLoader.prepareInstallationPlanFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
@@ -202,4 +206,55 @@ public class InstallationPlanTest
     {
         createInstallationPlan( "metadata-uuid.xml" );
     }
+
+    @Test
+    public void testMultipleErrors()
+        throws Exception
+    {
+        try
+        {
+            createInstallationPlan( "multiple-errors.xml" );
+            fail( "Expected ArtifactInstallationException" );
+        }
+        catch ( ArtifactInstallationException e )
+        {
+            // Errors refer to artifacts and are reported in plan order
+            String message = e.getMessage();
+            int nonExistent =
+                message.indexOf( "Artifact #1 (com.example:test:42): Artifact path points to a non-existent file" );
+            int noGroupId = message.indexOf( "Artifact #2 (:test2:42): Artifact metadata must have group ID set" );
+            int nonRegular =
+                message.indexOf( "Artifact #3 (com.example:test3:42): Artifact path points to a non-regular file" );
+            assertTrue( nonExistent >= 0 );
+            assertTrue( noGroupId > nonExistent );
+            assertTrue( nonRegular > noGroupId );
+        }
+    }
+
+    @Test
+    public void testConcurrentValidation()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            InstallationPlan plan = new InstallationPlan( prepareInstallationPlanFile( "valid.xml" ), executor );
+            assertEquals( 2, plan.getArtifacts().size() );
+
+            try
+            {
+                new InstallationPlan( prepareInstallationPlanFile( "multiple-errors.xml" ), executor );
+                fail( "Expected ArtifactInstallationException" );
+            }
+            catch ( ArtifactInstallationException e )
+            {
+                assertTrue( e.getMessage().contains( "non-existent file" ) );
+                assertTrue( e.getMessage().contains( "non-regular file" ) );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
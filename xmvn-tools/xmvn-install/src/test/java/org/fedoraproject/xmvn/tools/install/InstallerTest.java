@@ -21,6 +21,7 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.fedoraproject.xmvn.tools.install.InstallationPlanLoader.prepareInstallationPlanFile;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -38,6 +39,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -103,7 +105,9 @@ public class InstallerTest
 
         binder.bind( ArtifactInstaller.class ).toInstance( new MockArtifactInstaller() );
 
-        binder.bind( Resolver.class ).toProvider( ( ) -> resolverMock );
+        // Batch resolutions are delegated to single resolutions, which are what the mock expects
+        Resolver resolver = request -> resolverMock.resolve( request );
+        binder.bind( Resolver.class ).toProvider( ( ) -> resolver );
     }
 
     private void addResolution( String coordinates, final String compatVersion, final String namespace, final Path path )
@@ -247,6 +251,42 @@ public class InstallerTest
                              installRoot.resolve( "usr/share/maven-metadata/test-pkg.xml" ) );
     }
 
+    /**
+     * Test if dependency shared by several artifacts is resolved by system resolver only once.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSharedDependencyResolution()
+        throws Exception
+    {
+        Path dependencyJar = Paths.get( "/tmp/bla.jar" );
+        addResolution( "org.apache.lucene:lucene-benchmark:4.1" );
+        addResolution( "org.apache.lucene:lucene-benchmark", "4", "ns", dependencyJar );
+        addResolution( "com.example:test:42" );
+
+        install( "shared-deps.xml" );
+
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document metadata = builder.parse( installRoot.resolve( "usr/share/maven-metadata/test-pkg.xml" ).toFile() );
+        NodeList dependencies = metadata.getElementsByTagName( "dependency" );
+        assertEquals( 3, dependencies.getLength() );
+
+        int luceneDependencies = 0;
+        for ( int i = 0; i < dependencies.getLength(); i++ )
+        {
+            Element dependency = (Element) dependencies.item( i );
+            String artifactId = dependency.getElementsByTagName( "artifactId" ).item( 0 ).getTextContent();
+            if ( artifactId.equals( "lucene-benchmark" ) )
+            {
+                luceneDependencies++;
+                assertEquals( "4", dependency.getElementsByTagName( "resolvedVersion" ).item( 0 ).getTextContent() );
+                assertEquals( "ns", dependency.getElementsByTagName( "namespace" ).item( 0 ).getTextContent() );
+            }
+        }
+        assertEquals( 2, luceneDependencies );
+    }
+
     @Test
     public void testSubpackage()
         throws Exception
@@ -279,4 +319,20 @@ public class InstallerTest
         assertMetadataEqual( getResource( "test-pkg-sub.xml" ),
                              installRoot.resolve( "usr/share/maven-metadata/test-pkg-subpackage.xml" ) );
     }
+
+    @Test
+    public void testSequentialInstall()
+        throws Exception
+    {
+        config.getInstallerSettings().setInstallerThreads( 1 );
+        testSubpackage();
+    }
+
+    @Test
+    public void testParallelInstall()
+        throws Exception
+    {
+        config.getInstallerSettings().setInstallerThreads( 4 );
+        testSubpackage();
+    }
 }
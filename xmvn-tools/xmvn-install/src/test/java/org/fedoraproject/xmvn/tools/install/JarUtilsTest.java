@@ -18,16 +18,28 @@ package org.fedoraproject.xmvn.tools.install;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -137,6 +149,217 @@ public class JarUtilsTest
         assertFalse( JarUtils.containsNativeCode( nativeMethodJarPath ) );
     }
 
+    /**
+     * Test if manifest is not rewritten when it already contains all injected fields.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifestInjectionUnmodified()
+        throws Exception
+    {
+        Path testResource = Paths.get( "src/test/resources/example.jar" );
+        Path testJar = workDir.resolve( "manifest-unmodified.jar" );
+        Files.copy( testResource, testJar, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING );
+
+        Artifact artifact = new DefaultArtifact( "org.apache.maven", "maven-model", "xsd", "model", "2.2.1" );
+        JarUtils.injectManifest( testJar, artifact );
+        byte[] injectedContent = Files.readAllBytes( testJar );
+
+        JarUtils.injectManifest( testJar, artifact );
+        assertTrue( Arrays.equals( injectedContent, Files.readAllBytes( testJar ) ) );
+    }
+
+    private static List<String> describeEntries( Path zip )
+        throws Exception
+    {
+        List<String> entries = new ArrayList<>();
+
+        try (ZipFile zipFile = new ZipFile( zip.toFile() ))
+        {
+            for ( ZipEntry entry : Collections.list( zipFile.entries() ) )
+            {
+                if ( !entry.getName().equals( "META-INF/MANIFEST.MF" ) )
+                    entries.add( entry.getName() + " " + entry.getMethod() + " " + entry.getCrc() + " "
+                        + entry.getCompressedSize() + " " + entry.getSize() );
+            }
+        }
+
+        return entries;
+    }
+
+    private static Path createJar( Path jar, int entryCount )
+        throws Exception
+    {
+        Manifest mf = new Manifest();
+        mf.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+
+        try (JarOutputStream jos = new JarOutputStream( Files.newOutputStream( jar ), mf ))
+        {
+            for ( int i = 0; i < entryCount; i++ )
+            {
+                jos.putNextEntry( new JarEntry( String.format( "entry-%06d.txt", i ) ) );
+                jos.write( ( "content of entry " + i ).getBytes( StandardCharsets.US_ASCII ) );
+            }
+        }
+
+        return jar;
+    }
+
+    private static void assertManifestInjected( Path jar )
+        throws Exception
+    {
+        try (JarInputStream jis = new JarInputStream( Files.newInputStream( jar ) ))
+        {
+            Manifest mf = jis.getManifest();
+            assertNotNull( mf );
+            assertEquals( "org.apache.maven", mf.getMainAttributes().getValue( "JavaPackages-GroupId" ) );
+            assertEquals( "maven-model", mf.getMainAttributes().getValue( "JavaPackages-ArtifactId" ) );
+        }
+    }
+
+    /**
+     * Test if manifest injection copies all entries other than manifest without recompressing them.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifestInjectionVerbatimCopy()
+        throws Exception
+    {
+        Path testResource = Paths.get( "src/test/resources/example.jar" );
+        Path testJar = workDir.resolve( "manifest-verbatim.jar" );
+        Files.copy( testResource, testJar, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING );
+
+        Artifact artifact = new DefaultArtifact( "org.apache.maven", "maven-model", "xsd", "model", "2.2.1" );
+        JarUtils.injectManifest( testJar, artifact );
+
+        assertManifestInjected( testJar );
+        assertEquals( describeEntries( testResource ), describeEntries( testJar ) );
+    }
+
+    /**
+     * Test if manifest injection preserves duplicate entries.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifestInjectionDuplicateEntries()
+        throws Exception
+    {
+        Path testJar = createJar( workDir.resolve( "manifest-duplicate.jar" ), 2 );
+
+        // Rename the second entry so that it has the same name as the first one
+        byte[] content = Files.readAllBytes( testJar );
+        String latin1 = new String( content, StandardCharsets.ISO_8859_1 );
+        latin1 = latin1.replace( "entry-000001.txt", "entry-000000.txt" );
+        Files.write( testJar, latin1.getBytes( StandardCharsets.ISO_8859_1 ) );
+
+        Artifact artifact = new DefaultArtifact( "org.apache.maven", "maven-model", "xsd", "model", "2.2.1" );
+        JarUtils.injectManifest( testJar, artifact );
+
+        assertManifestInjected( testJar );
+        try (ZipInputStream zis = new ZipInputStream( Files.newInputStream( testJar ) ))
+        {
+            List<String> names = new ArrayList<>();
+            ZipEntry entry;
+            while ( ( entry = zis.getNextEntry() ) != null )
+                names.add( entry.getName() );
+
+            assertEquals( Arrays.asList( "META-INF/MANIFEST.MF", "entry-000000.txt", "entry-000000.txt" ), names );
+        }
+    }
+
+    /**
+     * Test if manifest can be injected into ZIP64 archive.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifestInjectionZip64()
+        throws Exception
+    {
+        // More than 65535 entries force ZIP64 format
+        Path testJar = createJar( workDir.resolve( "manifest-zip64.jar" ), 70000 );
+        List<String> entries = describeEntries( testJar );
+
+        Artifact artifact = new DefaultArtifact( "org.apache.maven", "maven-model", "xsd", "model", "2.2.1" );
+        JarUtils.injectManifest( testJar, artifact );
+
+        assertManifestInjected( testJar );
+        assertEquals( entries, describeEntries( testJar ) );
+    }
+
+    /**
+     * Test if manifest injection preserves all entries of archive whose entry count is too small, as in archives with
+     * more than 65535 entries which don't use ZIP64 format.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifestInjectionTruncatedEntryCount()
+        throws Exception
+    {
+        Path testJar = createJar( workDir.resolve( "manifest-truncated-count.jar" ), 3 );
+        List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile( testJar.toFile() ))
+        {
+            for ( ZipEntry entry : Collections.list( zipFile.entries() ) )
+                names.add( entry.getName() );
+        }
+
+        // Make end of central directory record claim that archive has only one entry
+        byte[] content = Files.readAllBytes( testJar );
+        ByteBuffer end = ByteBuffer.wrap( content ).order( ByteOrder.LITTLE_ENDIAN );
+        end.putShort( content.length - 22 + 8, (short) 1 );
+        end.putShort( content.length - 22 + 10, (short) 1 );
+        Files.write( testJar, content );
+
+        Artifact artifact = new DefaultArtifact( "org.apache.maven", "maven-model", "xsd", "model", "2.2.1" );
+        JarUtils.injectManifest( testJar, artifact );
+
+        assertManifestInjected( testJar );
+        try (ZipInputStream zis = new ZipInputStream( Files.newInputStream( testJar ) ))
+        {
+            List<String> actualNames = new ArrayList<>();
+            ZipEntry entry;
+            while ( ( entry = zis.getNextEntry() ) != null )
+                actualNames.add( entry.getName() );
+
+            assertEquals( names, actualNames );
+        }
+    }
+
+    /**
+     * Test if JAR analysis gathers all facts about JAR.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testJarAnalysis()
+        throws Exception
+    {
+        JarAnalysis plainJar = JarUtils.analyzeJar( Paths.get( "src/test/resources/example.jar" ) );
+        assertNotNull( plainJar.getManifest() );
+        assertFalse( plainJar.usesNativeCode() );
+        assertFalse( plainJar.containsNativeCode() );
+
+        JarAnalysis nativeCodeJar = JarUtils.analyzeJar( Paths.get( "src/test/resources/native-code.jar" ) );
+        assertFalse( nativeCodeJar.usesNativeCode() );
+        assertTrue( nativeCodeJar.containsNativeCode() );
+        assertNotNull( nativeCodeJar.getNativeCodeEntry() );
+
+        JarAnalysis nativeMethodJar = JarUtils.analyzeJar( Paths.get( "src/test/resources/native-method.jar" ) );
+        assertTrue( nativeMethodJar.usesNativeCode() );
+        assertFalse( nativeMethodJar.containsNativeCode() );
+        assertTrue( nativeMethodJar.getNativeMethodEntry().endsWith( ".class" ) );
+
+        JarAnalysis invalidJar = JarUtils.analyzeJar( Paths.get( "src/test/resources/invalid.jar" ) );
+        assertNull( invalidJar.getManifest() );
+        assertFalse( invalidJar.usesNativeCode() );
+        assertFalse( invalidJar.containsNativeCode() );
+    }
+
     /**
      * Test if any of utility functions throws exception when trying to access invalid JAR file.
      * 
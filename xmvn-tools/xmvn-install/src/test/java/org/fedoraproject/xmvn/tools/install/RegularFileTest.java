@@ -15,8 +15,15 @@
  */
 package org.fedoraproject.xmvn.tools.install;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -70,6 +77,84 @@ public class RegularFileTest
         assertDescriptorEquals( "%attr(0644,root,root) /usr/share/java/foobar.jar" );
     }
 
+    @Test
+    public void testHardLinkInstallation()
+        throws Exception
+    {
+        Path jar = workdir.resolve( "example.jar" );
+        Files.copy( getResource( "example.jar" ), jar );
+        add( new RegularFile( Paths.get( "usr/share/java/foobar.jar" ), jar ) );
+        FileCopier copier = new FileCopier( FileCopier.Mode.HARDLINK );
+        Path root = performInstallation( copier );
+        Path installed = root.resolve( Paths.get( "usr/share/java/foobar.jar" ) );
+        assertDirectoryStructure( "D /usr", "D /usr/share", "D /usr/share/java", "F /usr/share/java/foobar.jar" );
+        assertFilesEqual( jar, installed );
+        assertTrue( Files.isSameFile( jar, installed ) );
+        assertEquals( Files.size( jar ), copier.getBytesLinked() );
+        assertEquals( 0, copier.getBytesCopied() );
+        assertDescriptorEquals( "%attr(0644,root,root) /usr/share/java/foobar.jar" );
+    }
+
+    @Test
+    public void testFallbackToCopy()
+        throws Exception
+    {
+        Path jar = getResource( "example.jar" );
+        byte content[] = Files.readAllBytes( jar );
+        add( new RegularFile( Paths.get( "usr/share/java/foo.jar" ), jar ) );
+        add( new RegularFile( Paths.get( "usr/share/java/bar.jar" ), content ) );
+        FileCopier copier = new FileCopier( FileCopier.Mode.REFLINK );
+        Path root = performInstallation( copier );
+        assertDirectoryStructure( "D /usr", "D /usr/share", "D /usr/share/java", "F /usr/share/java/bar.jar",
+                                  "F /usr/share/java/foo.jar" );
+        assertFilesEqual( jar, root.resolve( Paths.get( "usr/share/java/foo.jar" ) ) );
+        assertFilesEqual( jar, root.resolve( Paths.get( "usr/share/java/bar.jar" ) ) );
+        // Whether reflink was created depends on file system, but every byte must be accounted for exactly once
+        assertEquals( 2 * content.length, copier.getBytesCopied() + copier.getBytesCloned() );
+        assertEquals( 0, copier.getBytesLinked() );
+    }
+
+    @Test
+    public void testExistingTarget()
+        throws Exception
+    {
+        Path jar = getResource( "example.jar" );
+        Path target = workdir.resolve( "foobar.jar" );
+        Files.write( target, new byte[] { 42 } );
+
+        for ( FileCopier.Mode mode : FileCopier.Mode.values() )
+        {
+            try
+            {
+                new FileCopier( mode ).copy( jar, target );
+                fail( "Existing file was overwritten in mode " + mode );
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                assertEquals( 1, Files.size( target ) );
+                assertFalse( Files.isSymbolicLink( target ) );
+                assertTrue( Files.isRegularFile( target, LinkOption.NOFOLLOW_LINKS ) );
+            }
+        }
+    }
+
+    @Test
+    public void testCopyModeNames()
+        throws Exception
+    {
+        assertEquals( FileCopier.Mode.COPY, FileCopier.Mode.fromString( null ) );
+        assertEquals( FileCopier.Mode.COPY, FileCopier.Mode.fromString( "" ) );
+        assertEquals( FileCopier.Mode.REFLINK, FileCopier.Mode.fromString( "reflink" ) );
+        assertEquals( FileCopier.Mode.HARDLINK, FileCopier.Mode.fromString( "HardLink" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidCopyMode()
+        throws Exception
+    {
+        FileCopier.Mode.fromString( "symlink" );
+    }
+
     @Test( expected = IOException.class )
     public void testNonexistentFile()
         throws Exception
@@ -0,0 +1,105 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class BatchEntryTest
+{
+    private Path manifest;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        manifest = Files.createTempFile( "xmvn-batch", ".txt" );
+    }
+
+    private void writeManifest( String... lines )
+        throws Exception
+    {
+        Files.write( manifest, Arrays.asList( lines ), StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Test if batch manifest is parsed correctly.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testManifest()
+        throws Exception
+    {
+        writeManifest( "# Packages built in this batch", //
+                       "", //
+                       "/builddir/foo/.xmvn-reactor foo /buildroot/foo", //
+                       "  /builddir/bar/.xmvn-reactor\tbar   /buildroot/bar /builddir/bar/descriptors  " );
+
+        List<BatchEntry> entries = BatchEntry.readManifest( manifest );
+        assertEquals( 2, entries.size() );
+
+        BatchEntry foo = entries.get( 0 );
+        assertEquals( Paths.get( "/builddir/foo/.xmvn-reactor" ), foo.getPlanPath() );
+        assertEquals( "foo", foo.getPackageName() );
+        assertEquals( Paths.get( "/buildroot/foo" ), foo.getInstallRoot() );
+        assertEquals( Paths.get( "/builddir/foo" ), foo.getDescriptorRoot() );
+
+        BatchEntry bar = entries.get( 1 );
+        assertEquals( Paths.get( "/builddir/bar/.xmvn-reactor" ), bar.getPlanPath() );
+        assertEquals( "bar", bar.getPackageName() );
+        assertEquals( Paths.get( "/buildroot/bar" ), bar.getInstallRoot() );
+        assertEquals( Paths.get( "/builddir/bar/descriptors" ), bar.getDescriptorRoot() );
+    }
+
+    /**
+     * Test if malformed manifest lines are reported together with their line numbers.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testMalformedManifest()
+        throws Exception
+    {
+        writeManifest( "/builddir/foo/.xmvn-reactor foo /buildroot/foo", //
+                       "/builddir/bar/.xmvn-reactor bar" );
+
+        try
+        {
+            BatchEntry.readManifest( manifest );
+            fail( "Expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            assertTrue( e.getMessage().contains( ":2:" ) );
+        }
+    }
+}
@@ -17,11 +17,15 @@ package org.fedoraproject.xmvn.tools.install.condition;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.junit.Test;
 
@@ -83,4 +87,64 @@ public class BooleanExpressionTest
         BooleanExpression xyzzyDefined = new Defined( "xyzzy" );
         assertFalse( xyzzyDefined.getValue( context ) );
     }
+
+    @Test
+    public void testConstantFolding()
+    {
+        BooleanExpression trueExpression = new BooleanLiteral( true );
+        BooleanExpression falseExpression = new BooleanLiteral( false );
+        BooleanExpression fooDefined = new Defined( "foo" );
+
+        assertSame( BooleanExpression.FALSE, new And( Arrays.asList( trueExpression, falseExpression ) ).compile() );
+        assertSame( BooleanExpression.FALSE, new And( Arrays.asList( fooDefined, falseExpression ) ).compile() );
+        assertSame( BooleanExpression.TRUE, new Or( Arrays.asList( fooDefined, trueExpression ) ).compile() );
+        assertSame( BooleanExpression.TRUE, new Xor( Arrays.asList( trueExpression, falseExpression ) ).compile() );
+        assertSame( BooleanExpression.TRUE, new Not( falseExpression ).compile() );
+        assertSame( BooleanExpression.TRUE, new Equals( new Null(), new Null() ).compile() );
+
+        StringExpression literal = new StringLiteral( "x" );
+        assertSame( BooleanExpression.FALSE, new Equals( literal, new Null() ).compile() );
+        assertSame( BooleanExpression.TRUE, new Equals( literal, new StringLiteral( "x" ) ).compile() );
+
+        ArtifactContext context = new ArtifactContext( new DefaultArtifact( "dummy", "dummy" ) );
+        Predicate<ArtifactContext> xor = new Xor( Arrays.asList( trueExpression, fooDefined ) ).compile();
+        assertTrue( xor.test( context ) );
+        Predicate<ArtifactContext> and = new And( Arrays.asList( trueExpression, new Not( fooDefined ) ) ).compile();
+        assertTrue( and.test( context ) );
+    }
+
+    @Test
+    public void testCompiledExpressions()
+    {
+        StringExpression extension = new Extension();
+        StringExpression classifier = new Classifier();
+        BooleanExpression isJar = new Equals( extension, new StringLiteral( "jar" ) );
+        BooleanExpression isNative = new Equals( new Property( "native" ), new StringLiteral( "true" ) );
+        BooleanExpression noClassifier = new Equals( new Null(), classifier );
+        BooleanExpression sameIds = new Equals( new GroupId(), new ArtifactId() );
+
+        List<BooleanExpression> expressions = Arrays.asList( isJar, isNative, noClassifier, sameIds, //
+                                                             new Not( isNative ), //
+                                                             new And( Arrays.asList( isJar, new Not( isNative ) ) ),
+                                                             new Or( Arrays.asList( isNative, sameIds, noClassifier ) ),
+                                                             new Xor( Arrays.asList( isJar, isNative, sameIds ) ),
+                                                             new Xor( Arrays.asList( new BooleanLiteral( true ), isJar,
+                                                                                     new Defined( "native" ) ) ) );
+
+        List<ArtifactContext> contexts =
+            Arrays.asList( new ArtifactContext( new DefaultArtifact( "foo", "bar" ) ),
+                           new ArtifactContext( new DefaultArtifact( "foo", "foo", "zip", "xyzzy", "1.2.3" ) ),
+                           new ArtifactContext( new DefaultArtifact( "foo", "foo", "jar", "1" ),
+                                                Collections.singletonMap( "native", "true" ) ),
+                           new ArtifactContext( new DefaultArtifact( "foo", "bar", "pom", "1" ),
+                                                Collections.singletonMap( "native", "false" ) ) );
+
+        for ( BooleanExpression expression : expressions )
+        {
+            Predicate<ArtifactContext> predicate = expression.compile();
+
+            for ( ArtifactContext context : contexts )
+                assertEquals( expression.getValue( context ), predicate.test( context ) );
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fedoraproject.xmvn.artifact.DefaultArtifact;
+import org.fedoraproject.xmvn.repository.ArtifactContext;
+
+/**
+ * Compares speed of interpreted and compiled repository filters. Filters are modelled after repository configuration
+ * used by Java packaging in Fedora, where every install path lookup checks filters of several repositories.
+ * <p>
+ * Benchmark is skipped unless system property {@code xmvn.benchmark} is set to {@code true}.
+ * 
+ * @author Mikolaj Izdebski
+ */
+public class ConditionBenchmarkTest
+{
+    private static final int ITERATIONS = 200;
+
+    private List<BooleanExpression> filters;
+
+    private List<ArtifactContext> contexts;
+
+    private static BooleanExpression equals( StringExpression lhs, String rhs )
+    {
+        return new Equals( lhs, new StringLiteral( rhs ) );
+    }
+
+    @Before
+    public void setUp()
+    {
+        BooleanExpression isNative = equals( new Property( "native" ), "true" );
+        BooleanExpression isJar = equals( new Extension(), "jar" );
+
+        filters = new ArrayList<>();
+        // Architecture-independent JARs and ZIPs
+        filters.add( new Or( Arrays.asList( new And( Arrays.asList( isJar, new Not( isNative ) ) ),
+                                            equals( new Extension(), "zip" ) ) ) );
+        // JARs with native code
+        filters.add( new And( Arrays.asList( isJar, isNative ) ) );
+        // POM files
+        filters.add( equals( new Extension(), "pom" ) );
+        // Artifacts without classifier from selected groups
+        filters.add( new And( Arrays.asList( new Equals( new Classifier(), new StringLiteral( "" ) ),
+                                             new Or( Arrays.asList( equals( new GroupId(), "org.apache.maven" ),
+                                                                    equals( new GroupId(), "org.codehaus.plexus" ),
+                                                                    equals( new GroupId(), "junit" ) ) ) ) ) );
+        // Filter with literal subexpressions, as produced by configuration templates
+        filters.add( new Or( Arrays.asList( new BooleanLiteral( false ),
+                                            new And( Arrays.asList( new BooleanLiteral( true ), new Defined( "foo" ),
+                                                                    new Not( new BooleanLiteral( false ) ) ) ),
+                                            new Equals( new StringLiteral( "a" ), new Null() ) ) ) );
+
+        Map<String, String> nativeProperties = Collections.singletonMap( "native", "true" );
+        contexts = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            String groupId = i % 3 == 0 ? "org.apache.maven" : "org.example.group" + i % 17;
+            String extension = i % 5 == 0 ? "pom" : i % 7 == 0 ? "zip" : "jar";
+            String classifier = i % 4 == 0 ? "tests" : "";
+            DefaultArtifact artifact = new DefaultArtifact( groupId, "artifact" + i, extension, classifier, "1." + i );
+            contexts.add( i % 11 == 0 ? new ArtifactContext( artifact, nativeProperties )
+                            : new ArtifactContext( artifact ) );
+        }
+    }
+
+    private long runInterpreted()
+    {
+        long matches = 0;
+        for ( int i = 0; i < ITERATIONS; i++ )
+            for ( ArtifactContext context : contexts )
+                for ( BooleanExpression filter : filters )
+                    if ( filter.getValue( context ) )
+                        matches++;
+        return matches;
+    }
+
+    private long runCompiled( List<Predicate<ArtifactContext>> predicates )
+    {
+        long matches = 0;
+        for ( int i = 0; i < ITERATIONS; i++ )
+            for ( ArtifactContext context : contexts )
+                for ( Predicate<ArtifactContext> predicate : predicates )
+                    if ( predicate.test( context ) )
+                        matches++;
+        return matches;
+    }
+
+    @Test
+    public void testBenchmark()
+    {
+        assumeTrue( Boolean.getBoolean( "xmvn.benchmark" ) );
+
+        List<Predicate<ArtifactContext>> predicates = new ArrayList<>();
+        for ( BooleanExpression filter : filters )
+            predicates.add( filter.compile() );
+
+        // Warm up JIT compiler
+        for ( int i = 0; i < 10; i++ )
+            assertEquals( runInterpreted(), runCompiled( predicates ) );
+
+        long start = System.nanoTime();
+        long interpretedMatches = runInterpreted();
+        long interpretedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long compiledMatches = runCompiled( predicates );
+        long compiledTime = System.nanoTime() - start;
+
+        assertEquals( interpretedMatches, compiledMatches );
+
+        long evaluations = (long) ITERATIONS * contexts.size() * filters.size();
+        System.out.printf( "Interpreted filters: %.1f ns per evaluation%n", (double) interpretedTime / evaluations );
+        System.out.printf( "Compiled filters:    %.1f ns per evaluation%n", (double) compiledTime / evaluations );
+    }
+}
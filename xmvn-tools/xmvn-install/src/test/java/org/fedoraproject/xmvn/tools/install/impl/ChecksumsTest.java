@@ -0,0 +1,61 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class ChecksumsTest
+{
+    @Test
+    public void testByteArrayChecksum()
+        throws Exception
+    {
+        assertEquals( "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                      Checksums.checksum( new byte[0] ) );
+        assertEquals( "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                      Checksums.checksum( "abc".getBytes( StandardCharsets.US_ASCII ) ) );
+    }
+
+    @Test
+    public void testFileChecksum()
+        throws Exception
+    {
+        // File larger than read buffer
+        byte[] content = new byte[200000];
+        for ( int i = 0; i < content.length; i++ )
+            content[i] = (byte) ( i * 31 );
+
+        Path file = Files.createTempFile( "xmvn-test", ".bin" );
+        try
+        {
+            Files.write( file, content );
+            assertEquals( Checksums.checksum( content ), Checksums.checksum( file ) );
+        }
+        finally
+        {
+            Files.delete( file );
+        }
+    }
+}
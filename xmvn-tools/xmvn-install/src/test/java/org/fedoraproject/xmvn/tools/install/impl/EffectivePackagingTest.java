@@ -16,10 +16,14 @@
 package org.fedoraproject.xmvn.tools.install.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.sisu.launch.InjectedTest;
@@ -248,4 +252,70 @@ public class EffectivePackagingTest
         assertEquals( effAlias.getArtifactId(), "bar-test" );
         assertEquals( effAlias.getVersion(), "1.2.3" );
     }
+
+    private static PackagingRule createRule( String groupId, String file, String targetPackage )
+    {
+        Artifact glob = new Artifact();
+        glob.setGroupId( groupId );
+
+        PackagingRule rule = new PackagingRule();
+        rule.setArtifactGlob( glob );
+        rule.addFile( file );
+        rule.setTargetPackage( targetPackage );
+        return rule;
+    }
+
+    /**
+     * Test if rules indexed by literal groupId are applied in configuration order together with wildcard rules.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIndexRuleOrder()
+        throws Exception
+    {
+        PackagingRule rule1 = createRule( "foo*", "file1", "pkg1" );
+        PackagingRule rule2 = createRule( "foo", "file2", "pkg2" );
+        PackagingRule rule3 = createRule( "bar", "file3", "pkg3" );
+        PackagingRule rule4 = createRule( "", "file4", null );
+        PackagingRule rule5 = createRule( "foo", "file5", null );
+        List<PackagingRule> artifactManagement = Arrays.asList( rule1, rule2, rule3, rule4, rule5 );
+
+        PackagingRuleIndex index = new PackagingRuleIndex( artifactManagement );
+        PackagingRule effRule = index.getEffectiveRule( "foo", "bar", "jar", "", "1.2.3" );
+        assertEquals( Arrays.asList( "file1", "file2", "file4", "file5" ), effRule.getFiles() );
+        assertEquals( "pkg1", effRule.getTargetPackage() );
+
+        assertTrue( rule1.isMatched() );
+        assertTrue( rule2.isMatched() );
+        assertFalse( rule3.isMatched() );
+        assertTrue( rule4.isMatched() );
+        assertTrue( rule5.isMatched() );
+
+        PackagingRule effRule2 = index.getEffectiveRule( "bar", "baz", "jar", "", "1.2.3" );
+        assertEquals( Arrays.asList( "file3", "file4" ), effRule2.getFiles() );
+        assertEquals( "pkg3", effRule2.getTargetPackage() );
+        assertTrue( rule3.isMatched() );
+    }
+
+    /**
+     * Test if effective rules are memoized per artifact coordinates.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIndexMemoization()
+        throws Exception
+    {
+        List<PackagingRule> artifactManagement = Arrays.asList( createRule( "{*}", "@1.jar", "@1" ) );
+        PackagingRuleIndex index = new PackagingRuleIndex( artifactManagement );
+
+        PackagingRule effRule1 = index.getEffectiveRule( "foo", "bar", "jar", "", "1.2.3" );
+        PackagingRule effRule2 = index.getEffectiveRule( "foo", "bar", "jar", "", "1.2.3" );
+        PackagingRule effRule3 = index.getEffectiveRule( "foo", "bar", "jar", "", "1.2.4" );
+        assertSame( effRule1, effRule2 );
+        assertNotSame( effRule1, effRule3 );
+        assertEquals( "foo", effRule1.getTargetPackage() );
+        assertEquals( Arrays.asList( "foo.jar" ), effRule3.getFiles() );
+    }
 }
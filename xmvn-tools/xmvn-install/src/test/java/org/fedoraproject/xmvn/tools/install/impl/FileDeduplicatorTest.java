@@ -0,0 +1,143 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.fedoraproject.xmvn.tools.install.Package;
+import org.fedoraproject.xmvn.tools.install.RegularFile;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class FileDeduplicatorTest
+{
+    private Path workDir;
+
+    private Path installRoot;
+
+    private Package pkg;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        workDir = Files.createTempDirectory( "xmvn-test" );
+        installRoot = workDir.resolve( "buildroot" );
+
+        pkg = new Package( "test" );
+        pkg.addFile( new RegularFile( Paths.get( "usr/share/java/foo.jar" ), source( "foo.jar", "same" ) ) );
+        pkg.addFile( new RegularFile( Paths.get( "usr/share/java/bar.jar" ), source( "bar.jar", "diff" ) ) );
+        pkg.addFile( new RegularFile( Paths.get( "usr/share/java/sub/baz.jar" ), source( "baz.jar", "same" ) ) );
+        pkg.addFile( new RegularFile( Paths.get( "usr/share/java/exec.jar" ), source( "exec.jar", "same" ), 0755 ) );
+        pkg.install( installRoot );
+    }
+
+    private Path source( String name, String content )
+        throws Exception
+    {
+        Path path = workDir.resolve( name );
+        Files.write( path, Collections.singleton( content ), StandardCharsets.US_ASCII );
+        return path;
+    }
+
+    private List<String> readDescriptor()
+        throws Exception
+    {
+        Path mfiles = workDir.resolve( ".mfiles" );
+        pkg.writeDescriptor( mfiles );
+        return Files.readAllLines( mfiles, StandardCharsets.UTF_8 );
+    }
+
+    @Test
+    public void testNone()
+        throws Exception
+    {
+        FileDeduplicator deduplicator = new FileDeduplicator( FileDeduplicator.Mode.fromString( null ) );
+        deduplicator.deduplicate( pkg, installRoot );
+
+        assertEquals( 0, deduplicator.getFilesReplaced() );
+        assertTrue( Files.isRegularFile( installRoot.resolve( "usr/share/java/sub/baz.jar" ),
+                                         LinkOption.NOFOLLOW_LINKS ) );
+    }
+
+    @Test
+    public void testSymlink()
+        throws Exception
+    {
+        FileDeduplicator deduplicator = new FileDeduplicator( FileDeduplicator.Mode.fromString( "symlink" ) );
+        deduplicator.deduplicate( pkg, installRoot );
+
+        assertEquals( 1, deduplicator.getFilesReplaced() );
+        assertEquals( 5, deduplicator.getBytesSaved() );
+
+        Path baz = installRoot.resolve( "usr/share/java/sub/baz.jar" );
+        assertTrue( Files.isSymbolicLink( baz ) );
+        assertEquals( Paths.get( "../foo.jar" ), Files.readSymbolicLink( baz ) );
+        assertTrue( Files.isSameFile( installRoot.resolve( "usr/share/java/foo.jar" ), baz ) );
+
+        // Files with different access mode are not replaced
+        assertFalse( Files.isSymbolicLink( installRoot.resolve( "usr/share/java/exec.jar" ) ) );
+
+        assertEquals( Arrays.asList( "%attr(0644,root,root) /usr/share/java/foo.jar",
+                                     "%attr(0644,root,root) /usr/share/java/bar.jar", "/usr/share/java/sub/baz.jar",
+                                     "%attr(0755,root,root) /usr/share/java/exec.jar" ),
+                      readDescriptor() );
+    }
+
+    @Test
+    public void testHardLink()
+        throws Exception
+    {
+        FileDeduplicator deduplicator = new FileDeduplicator( FileDeduplicator.Mode.fromString( "HardLink" ) );
+        deduplicator.deduplicate( pkg, installRoot );
+
+        assertEquals( 1, deduplicator.getFilesReplaced() );
+
+        Path baz = installRoot.resolve( "usr/share/java/sub/baz.jar" );
+        assertTrue( Files.isRegularFile( baz, LinkOption.NOFOLLOW_LINKS ) );
+        assertTrue( Files.isSameFile( installRoot.resolve( "usr/share/java/foo.jar" ), baz ) );
+        assertFalse( Files.isSameFile( installRoot.resolve( "usr/share/java/exec.jar" ), baz ) );
+        assertEquals( 1, baz.getParent().toFile().list().length );
+
+        assertEquals( Arrays.asList( "%attr(0644,root,root) /usr/share/java/foo.jar",
+                                     "%attr(0644,root,root) /usr/share/java/bar.jar",
+                                     "%attr(0644,root,root) /usr/share/java/sub/baz.jar",
+                                     "%attr(0755,root,root) /usr/share/java/exec.jar" ),
+                      readDescriptor() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidMode()
+        throws Exception
+    {
+        FileDeduplicator.Mode.fromString( "copy" );
+    }
+}
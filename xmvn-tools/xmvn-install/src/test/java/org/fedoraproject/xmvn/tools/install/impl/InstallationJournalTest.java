@@ -0,0 +1,119 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class InstallationJournalTest
+{
+    private Path journalFile;
+
+    private Path artifactPath;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        Path dir = Files.createTempDirectory( "xmvn-test" );
+        journalFile = dir.resolve( "journal" );
+        artifactPath = dir.resolve( "foo.jar" );
+        Files.write( artifactPath, "abc".getBytes( StandardCharsets.US_ASCII ) );
+    }
+
+    /**
+     * Test if file hashes are computed correctly.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFileHash()
+        throws Exception
+    {
+        assertEquals( "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                      Checksums.checksum( artifactPath ) );
+    }
+
+    /**
+     * Test if preparation is reused only if artifact path, content and packaging rule are unchanged.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReuse()
+        throws Exception
+    {
+        String hash = Checksums.checksum( artifactPath );
+        Properties properties = new Properties();
+        properties.setProperty( "native", "true" );
+
+        InstallationJournal journal = new InstallationJournal( journalFile );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, hash, "rule" ) );
+        journal.record( "foo:bar:jar:1", artifactPath, hash, "rule", properties );
+        journal.record( "foo:baz:jar:1", artifactPath, hash, "rule", new Properties() );
+        journal.store();
+
+        journal = new InstallationJournal( journalFile );
+        Properties preparedProperties = journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, hash, "rule" );
+        assertNotNull( preparedProperties );
+        assertEquals( properties, preparedProperties );
+        assertEquals( new Properties(), journal.getPreparedProperties( "foo:baz:jar:1", artifactPath, hash, "rule" ) );
+
+        Files.write( artifactPath, "abcd".getBytes( StandardCharsets.US_ASCII ) );
+        String newHash = Checksums.checksum( artifactPath );
+        assertNotEquals( hash, newHash );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, newHash, "rule" ) );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, hash, "other-rule" ) );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:1", journalFile, hash, "rule" ) );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:2", artifactPath, hash, "rule" ) );
+    }
+
+    /**
+     * Test if journal keeps entries of the latest installation only.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLatestInstallationOnly()
+        throws Exception
+    {
+        String hash = Checksums.checksum( artifactPath );
+
+        InstallationJournal journal = new InstallationJournal( journalFile );
+        journal.record( "foo:bar:jar:1", artifactPath, hash, "rule", new Properties() );
+        journal.store();
+
+        journal = new InstallationJournal( journalFile );
+        assertNotNull( journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, hash, "rule" ) );
+        journal.store();
+
+        journal = new InstallationJournal( journalFile );
+        assertNull( journal.getPreparedProperties( "foo:bar:jar:1", artifactPath, hash, "rule" ) );
+    }
+}
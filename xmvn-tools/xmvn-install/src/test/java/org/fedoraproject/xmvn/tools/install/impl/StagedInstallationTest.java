@@ -0,0 +1,156 @@
+/*-
+ * Copyright (c) 2016 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fedoraproject.xmvn.tools.install.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Mikolaj Izdebski
+ */
+public class StagedInstallationTest
+{
+    private Path workDir;
+
+    private Path installRoot;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        workDir = Files.createTempDirectory( "xmvn-test" );
+        installRoot = workDir.resolve( "buildroot" );
+    }
+
+    private void writeFile( Path path, String content )
+        throws Exception
+    {
+        Files.createDirectories( path.getParent() );
+        Files.write( path, Collections.singleton( content ), StandardCharsets.US_ASCII );
+    }
+
+    private String readFile( Path path )
+        throws Exception
+    {
+        return new String( Files.readAllBytes( path ), StandardCharsets.US_ASCII ).trim();
+    }
+
+    /**
+     * Test if staging tree is created next to installation root and nothing is installed before publishing.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testStagingRoot()
+        throws Exception
+    {
+        StagedInstallation stage = new StagedInstallation( installRoot );
+        assertEquals( workDir, stage.getStagingRoot().getParent() );
+
+        writeFile( stage.getStagingRoot().resolve( "usr/share/java/foo.jar" ), "foo" );
+        assertFalse( Files.exists( installRoot ) );
+
+        stage.discard();
+        assertFalse( Files.exists( stage.getStagingRoot() ) );
+        assertFalse( Files.exists( installRoot ) );
+    }
+
+    /**
+     * Test if staging tree is published into installation root which doesn't exist yet.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPublish()
+        throws Exception
+    {
+        StagedInstallation stage = new StagedInstallation( installRoot );
+        writeFile( stage.getStagingRoot().resolve( "usr/share/java/foo.jar" ), "foo" );
+        Files.createSymbolicLink( stage.getStagingRoot().resolve( "usr/share/java/bar.jar" ),
+                                  installRoot.getFileSystem().getPath( "foo.jar" ) );
+        stage.publish();
+
+        assertEquals( "foo", readFile( installRoot.resolve( "usr/share/java/foo.jar" ) ) );
+        assertTrue( Files.isSymbolicLink( installRoot.resolve( "usr/share/java/bar.jar" ) ) );
+        assertEquals( "foo", readFile( installRoot.resolve( "usr/share/java/bar.jar" ) ) );
+        assertFalse( Files.exists( stage.getStagingRoot() ) );
+    }
+
+    /**
+     * Test if staged directories are merged with directories already present in installation root.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testMerge()
+        throws Exception
+    {
+        writeFile( installRoot.resolve( "usr/share/java/foo.jar" ), "foo" );
+
+        StagedInstallation stage = new StagedInstallation( installRoot );
+        writeFile( stage.getStagingRoot().resolve( "usr/share/java/bar.jar" ), "bar" );
+        writeFile( stage.getStagingRoot().resolve( "usr/share/maven-poms/bar.pom" ), "pom" );
+        stage.publish();
+
+        assertEquals( "foo", readFile( installRoot.resolve( "usr/share/java/foo.jar" ) ) );
+        assertEquals( "bar", readFile( installRoot.resolve( "usr/share/java/bar.jar" ) ) );
+        assertEquals( "pom", readFile( installRoot.resolve( "usr/share/maven-poms/bar.pom" ) ) );
+        assertFalse( Files.exists( stage.getStagingRoot() ) );
+    }
+
+    /**
+     * Test if installation root is left untouched when staged file conflicts with existing file.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConflict()
+        throws Exception
+    {
+        writeFile( installRoot.resolve( "usr/share/java/foo.jar" ), "foo" );
+
+        StagedInstallation stage = new StagedInstallation( installRoot );
+        writeFile( stage.getStagingRoot().resolve( "usr/share/java/bar.jar" ), "bar" );
+        writeFile( stage.getStagingRoot().resolve( "usr/share/java/foo.jar" ), "new-foo" );
+
+        try
+        {
+            stage.publish();
+            fail( "Expected FileAlreadyExistsException" );
+        }
+        catch ( FileAlreadyExistsException e )
+        {
+            // Expected
+        }
+
+        assertEquals( "foo", readFile( installRoot.resolve( "usr/share/java/foo.jar" ) ) );
+        assertFalse( Files.exists( installRoot.resolve( "usr/share/java/bar.jar" ) ) );
+
+        stage.discard();
+        assertFalse( Files.exists( stage.getStagingRoot() ) );
+    }
+}
@@ -125,17 +125,14 @@ public class ResolverCli
             boolean error = false;
 
             List<ResolutionRequest> requests = parseRequests( cliRequest );
-            List<ResolutionResult> results = new ArrayList<>();
+            List<ResolutionResult> results = resolver.resolveAll( requests );
 
-            for ( ResolutionRequest request : requests )
+            for ( int i = 0; i < requests.size(); i++ )
             {
-                ResolutionResult result = resolver.resolve( request );
-                results.add( result );
-
-                if ( result.getArtifactPath() == null )
+                if ( results.get( i ).getArtifactPath() == null )
                 {
                     error = true;
-                    logger.error( "Unable to resolve artifact {}", request.getArtifact() );
+                    logger.error( "Unable to resolve artifact {}", requests.get( i ).getArtifact() );
                 }
             }
 
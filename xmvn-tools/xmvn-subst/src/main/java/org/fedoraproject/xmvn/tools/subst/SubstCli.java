@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.fedoraproject.xmvn.config.Configurator;
+import org.fedoraproject.xmvn.config.ResolverSettings;
 import org.fedoraproject.xmvn.resolver.impl.MetadataResolver;
 
 /**
@@ -52,7 +53,9 @@ public class SubstCli
     @Inject
     public SubstCli( Configurator configurator )
     {
-        configuredMetadataRepos = configurator.getConfiguration().getResolverSettings().getMetadataRepositories();
+        ResolverSettings settings = configurator.getConfiguration().getResolverSettings();
+        configuredMetadataRepos = settings.getMetadataRepositories();
+        MetadataResolver.setReaderThreadCount( settings.getMetadataReaderThreads() );
     }
 
     private void run( SubstCliRequest cliRequest )
@@ -95,6 +98,10 @@ public class SubstCli
         {
             logger.error( "I/O error occured", e );
         }
+        finally
+        {
+            MetadataResolver.shutdownReaders();
+        }
 
         if ( cliRequest.isStrict() && visitor.getFailureCount() > 0 )
             System.exit( 1 );